@@ -0,0 +1,47 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileFilter;
+
+import org.junit.Test;
+
+/**
+ *
+ * Assembly cache and incremental update test case
+ *
+ */
+
+public class AssemblyCacheIT {
+
+    private File installDirectory = new File("target/liberty");
+
+    @Test
+    public void testUpdateAppliedAddedEntry() throws Exception {
+        assertTrue(new File(installDirectory, "etc/assembly-update.txt").isFile());
+    }
+
+    @Test
+    public void testUpdateKeptServer() throws Exception {
+        assertTrue(new File(installDirectory, "usr/servers/test/server.xml").isFile());
+    }
+
+    @Test
+    public void testInstallIsMarked() throws Exception {
+        assertTrue(new File(installDirectory, ".installed").isFile());
+        assertTrue(new File(installDirectory, "lib/ws-launch.jar").isFile());
+    }
+
+    @Test
+    public void testBothAssembliesAreCached() throws Exception {
+        File[] cached = new File("target/assembly-cache").listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                // staging directories start with a dot
+                return file.isDirectory() && !file.getName().startsWith(".");
+            }
+        });
+        assertNotNull(cached);
+        assertEquals(2, cached.length);
+    }
+}
@@ -0,0 +1,153 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ *
+ * OCI image layout test case
+ *
+ */
+
+public class PackageImageIT {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File imageDirectory = new File("target/liberty-image");
+
+    @Test
+    public void testLayoutFiles() throws Exception {
+        String layout = new String(Files.readAllBytes(new File(imageDirectory, "oci-layout").toPath()), UTF_8);
+        assertTrue(layout, layout.contains("\"imageLayoutVersion\":\"1.0.0\""));
+        String index = new String(Files.readAllBytes(new File(imageDirectory, "index.json").toPath()), UTF_8);
+        assertTrue(index, index.contains("\"org.opencontainers.image.ref.name\":\"1.0-SNAPSHOT\""));
+    }
+
+    @Test
+    public void testBlobsMatchTheirDigests() throws Exception {
+        File[] blobs = new File(imageDirectory, "blobs/sha256").listFiles();
+        assertNotNull(blobs);
+        assertTrue(blobs.length > 0);
+        for (File blob : blobs) {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(Files.readAllBytes(blob.toPath()));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            assertEquals(blob.getName(), sb.toString());
+        }
+    }
+
+    @Test
+    public void testLayersContainServer() throws Exception {
+        Map<String, long[]> entries = getLayerEntries();
+        assertNotNull(entries.get("opt/ibm/wlp/lib/ws-launch.jar"));
+        assertNotNull(entries.get("opt/ibm/wlp/usr/servers/test/server.xml"));
+    }
+
+    @Test
+    public void testServerFilesBelongToImageUser() throws Exception {
+        Map<String, long[]> entries = getLayerEntries();
+        // mode, uid and gid
+        assertArrayEquals(new long[] { 0644, 1001, 0 }, entries.get("opt/ibm/wlp/lib/ws-launch.jar"));
+        assertArrayEquals(new long[] { 0644, 1001, 0 }, entries.get("opt/ibm/wlp/usr/servers/test/server.xml"));
+        assertArrayEquals(new long[] { 0755, 0, 0 }, entries.get("opt/"));
+    }
+
+    @Test
+    public void testApplicationDirectoriesAreGroupWritable() throws Exception {
+        Map<String, long[]> entries = getLayerEntries();
+        assertArrayEquals(new long[] { 0775, 1001, 0 }, entries.get("opt/ibm/wlp/usr/servers/test/"));
+        assertArrayEquals(new long[] { 0755, 1001, 0 }, entries.get("opt/ibm/wlp/lib/"));
+    }
+
+    @Test
+    public void testImageRunsAsImageUser() throws Exception {
+        boolean found = false;
+        for (File blob : new File(imageDirectory, "blobs/sha256").listFiles()) {
+            if (!isGzip(blob)) {
+                found |= new String(Files.readAllBytes(blob.toPath()), UTF_8).contains("\"User\":\"1001:0\"");
+            }
+        }
+        assertTrue(found);
+    }
+
+    private Map<String, long[]> getLayerEntries() throws Exception {
+        Map<String, long[]> entries = new HashMap<String, long[]>();
+        for (File blob : new File(imageDirectory, "blobs/sha256").listFiles()) {
+            if (isGzip(blob)) {
+                entries.putAll(getTarEntries(blob));
+            }
+        }
+        return entries;
+    }
+
+    private static boolean isGzip(File file) throws Exception {
+        InputStream in = new FileInputStream(file);
+        try {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the mode, uid and gid of the entries of a layer by name.
+     */
+    private static Map<String, long[]> getTarEntries(File layer) throws Exception {
+        Map<String, long[]> entries = new HashMap<String, long[]>();
+        DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(layer)));
+        try {
+            byte[] header = new byte[512];
+            while (true) {
+                try {
+                    in.readFully(header);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (header[0] == 0) {
+                    // end of archive
+                    break;
+                }
+                String prefix = field(header, 345, 155);
+                String name = field(header, 0, 100);
+                entries.put(prefix.isEmpty() ? name : prefix + "/" + name, new long[] { octal(header, 100),
+                        octal(header, 108), octal(header, 116) });
+                long size = octal(header, 124);
+                byte[] content = new byte[512];
+                for (long padded = (size + 511) / 512; padded > 0; padded--) {
+                    in.readFully(content);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    private static long octal(byte[] header, int offset) {
+        return Long.parseLong(field(header, offset, offset == 124 ? 12 : 8).trim(), 8);
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, UTF_8);
+    }
+}
@@ -0,0 +1,52 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+
+import org.junit.Test;
+
+/**
+ *
+ * Directory package test case
+ *
+ */
+
+public class DirectoryPackageIT {
+
+    private File packageDirectory = new File("target/server-directory");
+
+    @Test
+    public void testDirectoryContainsServer() throws Exception {
+        assertTrue(new File(packageDirectory, "wlp/lib/ws-launch.jar").isFile());
+        assertTrue(new File(packageDirectory, "wlp/usr/servers/test/server.xml").isFile());
+    }
+
+    @Test
+    public void testDirectoryIsMarked() throws Exception {
+        assertTrue(new File(packageDirectory, ".liberty-package").isFile());
+    }
+
+    @Test
+    public void testDirectoryLeavesOutLogsAndWorkarea() throws Exception {
+        assertFalse(new File(packageDirectory, "wlp/usr/servers/test/logs").exists());
+        assertFalse(new File(packageDirectory, "wlp/usr/servers/test/workarea").exists());
+    }
+
+    @Test
+    public void testDirectoryIsProjectArtifact() throws Exception {
+        BufferedReader reader = new BufferedReader(new FileReader("target/artifact-file.txt"));
+        try {
+            assertEquals(packageDirectory.getCanonicalFile(), new File(reader.readLine().trim()).getCanonicalFile());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testArchiveIsStillCreated() throws Exception {
+        assertTrue(new File("target/package-server-directory-it-1.0-SNAPSHOT.zip").isFile());
+    }
+}
@@ -0,0 +1,68 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+
+/**
+ *
+ * Parallel package test case
+ *
+ */
+
+public class ParallelPackageIT {
+
+    private File packageFile = new File("target/package-server-parallel-it-1.0-SNAPSHOT.zip");
+
+    @Test
+    public void testPackageContainsServer() throws Exception {
+        ZipFile zipFile = new ZipFile(packageFile);
+        try {
+            assertNotNull(zipFile.getEntry("wlp/lib/ws-launch.jar"));
+            assertNotNull(zipFile.getEntry("wlp/usr/servers/test/server.xml"));
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void testPackageLeavesOutLogsAndWorkarea() throws Exception {
+        ZipFile zipFile = new ZipFile(packageFile);
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                String name = entries.nextElement().getName();
+                assertFalse(name, name.startsWith("wlp/usr/servers/test/logs/"));
+                assertFalse(name, name.startsWith("wlp/usr/servers/test/workarea/"));
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    @Test
+    public void testPackageEntriesAreValid() throws Exception {
+        ZipFile zipFile = new ZipFile(packageFile);
+        try {
+            byte[] buffer = new byte[8192];
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                // reading an entry to the end checks its size and CRC
+                InputStream in = zipFile.getInputStream(entry);
+                try {
+                    while (in.read(buffer) != -1) {
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Test;
+
+/**
+ *
+ * Reproducible package test case
+ *
+ */
+
+public class ReproduciblePackageIT {
+
+    private File packageFile = new File("target/package-server-reproducible-it-1.0-SNAPSHOT.zip");
+
+    @Test
+    public void testPackagesAreIdentical() throws Exception {
+        byte[] first = Files.readAllBytes(packageFile.toPath());
+        byte[] second = Files.readAllBytes(new File("target/package-again.zip").toPath());
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testParallelPackageIsNormalized() throws Exception {
+        checkNormalized(packageFile);
+    }
+
+    @Test
+    public void testCommandPackageIsNormalized() throws Exception {
+        checkNormalized(new File("target/package-command.zip"));
+    }
+
+    private void checkNormalized(File file) throws Exception {
+        // the entries have the output timestamp as a DOS time in UTC, which ZipEntry reads as local time
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2017, Calendar.JANUARY, 1, 0, 0, 0);
+        long expected = calendar.getTimeInMillis();
+
+        List<String> names = new ArrayList<String>();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals(entry.getName(), expected, entry.getTime());
+                names.add(entry.getName());
+            }
+        } finally {
+            zipFile.close();
+        }
+        List<String> sorted = new ArrayList<String>(names);
+        Collections.sort(sorted);
+        assertEquals(sorted, names);
+    }
+}
@@ -0,0 +1,34 @@
+package net.wasdev.wlp.maven.test.app;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+import org.junit.Test;
+
+/**
+ *
+ * Server status test case
+ *
+ */
+
+public class ServerStatusIT {
+
+    @Test
+    public void testRunningServerHoldsLock() throws Exception {
+        File lockFile = new File("target/liberty/usr/servers/test/workarea/.sLock");
+        assertTrue(lockFile.isFile());
+        RandomAccessFile file = new RandomAccessFile(lockFile, "rw");
+        try {
+            FileLock lock = file.getChannel().tryLock();
+            if (lock != null) {
+                lock.release();
+            }
+            assertNull("The server does not hold its lock", lock);
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -35,7 +35,7 @@ public class ApplicationXmlDocument extends XmlDocument {
         }
     }
     
-    public void createApplicationElement(String appFileName) {
+    public synchronized void createApplicationElement(String appFileName) {
         File app = new File(appFileName);
         
         if ("war".equalsIgnoreCase(appFileName.substring(appFileName.lastIndexOf(".")+1))) {
@@ -47,7 +47,7 @@ public class ApplicationXmlDocument extends XmlDocument {
         }
     }    
  
-    public void createElement(String element, File appFile) {
+    public synchronized void createElement(String element, File appFile) {
         Element child = doc.createElement(element);
         child.setAttribute("id", stripFileExtension(appFile.getName()));
         child.setAttribute("location", appFile.getName());
@@ -55,7 +55,7 @@ public class ApplicationXmlDocument extends XmlDocument {
         doc.getDocumentElement().appendChild(child);
     }
     
-    public void writeApplicationXmlDocument(File serverDirectory) throws IOException, TransformerException {
+    public synchronized void writeApplicationXmlDocument(File serverDirectory) throws IOException, TransformerException {
         File applicationXml = getApplicationXmlFile(serverDirectory);
         if (!applicationXml.getParentFile().exists()) {
             applicationXml.getParentFile().mkdirs();
@@ -68,7 +68,7 @@ public class ApplicationXmlDocument extends XmlDocument {
         return f;
     }
         
-    public boolean hasChildElements() {
+    public synchronized boolean hasChildElements() {
         if (doc.getDocumentElement().getChildNodes().getLength() > 0) {
             return true;
         } else {
@@ -0,0 +1,166 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The <code>Applies-To</code> manifest header of a license or fix jar, which
+ * names the products, editions and versions the jar can be applied to.
+ * <p>
+ * The header is a comma separated list of product ids with optional
+ * <code>productVersion</code> and <code>productEdition</code> attributes,
+ * e.g. <code>com.ibm.websphere.appserver; productVersion=17.0.0.2+;
+ * productEdition="BASE,DEVELOPERS"</code>. A version that ends with
+ * <code>+</code> matches that version and later ones. The installed products
+ * are described by the <code>lib/versions/*.properties</code> files.
+ */
+public class AppliesTo {
+
+    private final List<Map<String, String>> products = new ArrayList<Map<String, String>>();
+
+    public AppliesTo(String header) {
+        for (String clause : split(header, ',')) {
+            List<String> parts = split(clause, ';');
+            Map<String, String> product = new HashMap<String, String>();
+            product.put("productId", parts.get(0).trim());
+            for (String attribute : parts.subList(1, parts.size())) {
+                int eq = attribute.indexOf('=');
+                if (eq > 0) {
+                    product.put(attribute.substring(0, eq).trim(), unquote(attribute.substring(eq + 1).trim()));
+                }
+            }
+            if (!product.get("productId").isEmpty()) {
+                products.add(product);
+            }
+        }
+    }
+
+    /**
+     * Returns true if one of the products of the installation is one that the
+     * header applies to.
+     *
+     * @param versionsDirectory the <code>lib/versions</code> directory of the installation
+     */
+    public boolean matches(File versionsDirectory) throws IOException {
+        File[] files = versionsDirectory.listFiles();
+        if (files == null) {
+            return false;
+        }
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(".properties")) {
+                continue;
+            }
+            Properties installed = new Properties();
+            InputStream in = new FileInputStream(file);
+            try {
+                installed.load(in);
+            } finally {
+                in.close();
+            }
+            for (Map<String, String> product : products) {
+                if (matches(product, installed)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(Map<String, String> product, Properties installed) {
+        if (!product.get("productId").equals(installed.getProperty("com.ibm.websphere.productId"))) {
+            return false;
+        }
+        String editions = product.get("productEdition");
+        if (editions != null) {
+            String edition = installed.getProperty("com.ibm.websphere.productEdition");
+            if (edition == null || !Arrays.asList(editions.split("\\s*,\\s*")).contains(edition.trim())) {
+                return false;
+            }
+        }
+        String version = product.get("productVersion");
+        if (version != null) {
+            String installedVersion = installed.getProperty("com.ibm.websphere.productVersion");
+            if (installedVersion == null) {
+                return false;
+            }
+            if (version.endsWith("+")) {
+                return compareVersions(installedVersion.trim(), version.substring(0, version.length() - 1)) >= 0;
+            }
+            return installedVersion.trim().equals(version);
+        }
+        return true;
+    }
+
+    /**
+     * Compares dotted versions segment by segment, numerically where both
+     * segments are numbers.
+     */
+    private static int compareVersions(String a, String b) {
+        String[] as = a.split("\\.");
+        String[] bs = b.split("\\.");
+        for (int i = 0; i < Math.max(as.length, bs.length); i++) {
+            String x = i < as.length ? as[i] : "0";
+            String y = i < bs.length ? bs[i] : "0";
+            int result;
+            if (x.matches("\\d+") && y.matches("\\d+")) {
+                result = Long.valueOf(x).compareTo(Long.valueOf(y));
+            } else {
+                result = x.compareTo(y);
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Splits at the separators that are not within quotes.
+     */
+    private static List<String> split(String value, char separator) {
+        List<String> parts = new ArrayList<String>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+}
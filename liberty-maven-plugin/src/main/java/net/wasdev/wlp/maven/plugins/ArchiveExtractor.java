@@ -0,0 +1,235 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip archive using several threads.
+ * <p>
+ * The central directory is read once up front. File entries are then spread
+ * across worker threads, each of which inflates its share through its own
+ * {@link ZipFile} and writes it with a {@link FileChannel}. Unix permissions
+ * stored in the archive are applied as the entries are written.
+ */
+public class ArchiveExtractor {
+
+    private static final int TRANSFER_SIZE = 1024 * 1024;
+
+    private final int threads;
+
+    private final List<String> withoutUnixModes = new ArrayList<String>();
+
+    public ArchiveExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ArchiveExtractor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Returns the names of the files of the last extracted archive that carry
+     * no Unix permissions, e.g. because they were added by a tool that does
+     * not record them. These files are left with the default permissions.
+     */
+    public List<String> getFilesWithoutUnixModes() {
+        return Collections.unmodifiableList(withoutUnixModes);
+    }
+
+    public void extract(File archive, File destDir) throws IOException {
+        extract(archive, ZipCentralDirectory.read(archive).getEntries(), destDir);
+    }
+
+    /**
+     * Extracts the given entries of the archive into the destination directory.
+     */
+    public void extract(final File archive, Collection<ZipCentralDirectory.Entry> entries, File destDir) throws IOException {
+        final Path dest = destDir.getCanonicalFile().toPath();
+        final boolean posix = Files.getFileStore(Files.createDirectories(dest)).supportsFileAttributeView("posix");
+
+        List<ZipCentralDirectory.Entry> files = new ArrayList<ZipCentralDirectory.Entry>();
+        List<ZipCentralDirectory.Entry> dirs = new ArrayList<ZipCentralDirectory.Entry>();
+        withoutUnixModes.clear();
+        for (ZipCentralDirectory.Entry entry : entries) {
+            if (entry.getUnixMode() == -1 && !entry.isDirectory()) {
+                withoutUnixModes.add(entry.getName());
+            }
+            Path target = resolve(dest, entry.getName());
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+                dirs.add(entry);
+            } else {
+                Files.createDirectories(target.getParent());
+                files.add(entry);
+            }
+        }
+
+        // hand out the largest entries first so the work is spread evenly
+        Collections.sort(files, new Comparator<ZipCentralDirectory.Entry>() {
+            @Override
+            public int compare(ZipCentralDirectory.Entry e1, ZipCentralDirectory.Entry e2) {
+                return Long.compare(e2.getSize(), e1.getSize());
+            }
+        });
+        int workers = Math.min(threads, Math.max(1, files.size()));
+        final List<List<ZipCentralDirectory.Entry>> partitions = new ArrayList<List<ZipCentralDirectory.Entry>>();
+        long[] load = new long[workers];
+        for (int i = 0; i < workers; i++) {
+            partitions.add(new ArrayList<ZipCentralDirectory.Entry>());
+        }
+        for (ZipCentralDirectory.Entry entry : files) {
+            int lightest = 0;
+            for (int i = 1; i < workers; i++) {
+                if (load[i] < load[lightest]) {
+                    lightest = i;
+                }
+            }
+            partitions.get(lightest).add(entry);
+            load[lightest] += entry.getSize() + 1;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final List<ZipCentralDirectory.Entry> partition : partitions) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        extractEntries(archive, partition, dest, posix);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Extraction of " + archive + " was interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed to extract " + archive, e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // directory permissions last so that read-only directories do not block their content
+        if (posix) {
+            for (ZipCentralDirectory.Entry entry : dirs) {
+                setPermissions(resolve(dest, entry.getName()), entry.getUnixMode());
+            }
+        }
+    }
+
+    private static void extractEntries(File archive, List<ZipCentralDirectory.Entry> entries, Path dest, boolean posix) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        ZipFile zipFile = new ZipFile(archive);
+        try {
+            for (ZipCentralDirectory.Entry entry : entries) {
+                ZipEntry zipEntry = zipFile.getEntry(entry.getName());
+                if (zipEntry == null) {
+                    throw new ZipException("Entry " + entry.getName() + " not found in " + archive);
+                }
+                Path target = resolve(dest, entry.getName());
+                InputStream in = zipFile.getInputStream(zipEntry);
+                try {
+                    write(in, target);
+                } finally {
+                    in.close();
+                }
+                if (zipEntry.getTime() != -1) {
+                    Files.setLastModifiedTime(target, FileTime.fromMillis(zipEntry.getTime()));
+                }
+                if (posix) {
+                    setPermissions(target, entry.getUnixMode());
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+    }
+
+    private static void write(InputStream in, Path target) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(in);
+        // replace rather than overwrite, existing files may be read-only or hard links
+        Files.deleteIfExists(target);
+        FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            long position = 0;
+            long count;
+            while ((count = out.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                position += count;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Path resolve(Path dest, String name) throws IOException {
+        Path target = dest.resolve(name).normalize();
+        if (!target.startsWith(dest)) {
+            throw new ZipException("Entry " + name + " is outside of the target directory");
+        }
+        return target;
+    }
+
+    static void setPermissions(Path path, int mode) throws IOException {
+        if (mode == -1) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        PosixFilePermission[] values = PosixFilePermission.values();
+        // PosixFilePermission is declared from OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+        for (int i = 0; i < values.length; i++) {
+            if ((mode & (0400 >> i)) != 0) {
+                permissions.add(values[i]);
+            }
+        }
+        Files.setPosixFilePermissions(path, permissions);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Machine-wide cache of extracted assemblies keyed by the assembly checksum.
+ * <p>
+ * Each cached assembly is extracted once into its own directory and published
+ * with an atomic rename, so concurrent builds never see a partial entry.
+ * Installations are then populated from the cache with hard links, falling
+ * back to copies when links are not supported between the two locations.
+ */
+public class AssemblyCache {
+
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    private final File cacheDirectory;
+
+    public AssemblyCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    public interface Populator {
+        void populate(File directory) throws Exception;
+    }
+
+    /**
+     * Returns the cached directory for the given key, calling the populator to
+     * fill it if it is not cached yet.
+     */
+    public File get(String key, Populator populator) throws Exception {
+        File cached = new File(cacheDirectory, key);
+        if (cached.isDirectory()) {
+            return cached;
+        }
+
+        Object lock = locks.putIfAbsent(key, new Object());
+        if (lock == null) {
+            lock = locks.get(key);
+        }
+        synchronized (lock) {
+            if (cached.isDirectory()) {
+                return cached;
+            }
+            FileUtils.forceMkdir(cacheDirectory);
+            File staging = new File(cacheDirectory, ".tmp-" + key + "-" + UUID.randomUUID());
+            try {
+                FileUtils.forceMkdir(staging);
+                populator.populate(staging);
+                try {
+                    Files.move(staging.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileSystemException e) {
+                    // another build published the same assembly first
+                    if (!cached.isDirectory()) {
+                        throw e;
+                    }
+                }
+            } finally {
+                if (staging.exists()) {
+                    FileUtils.deleteDirectory(staging);
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Populates the target directory from a cached directory. Files under any
+     * of the private paths are always copied so that they can be modified
+     * without affecting the cache; all other files are hard linked if possible.
+     *
+     * @return the number of files that were copied instead of linked
+     */
+    public static int install(File cached, File target, List<String> privatePaths) throws IOException {
+        final Path source = cached.toPath();
+        final Path dest = target.toPath();
+        final Installer installer = new Installer(privatePaths);
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dest.resolve(source.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String relative = source.relativize(file).toString().replace(File.separatorChar, '/');
+                installer.install(file, dest.resolve(relative), relative);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return installer.copied;
+    }
+
+    /**
+     * Replaces the given files of the target directory with the files of a
+     * cached directory, linking or copying them as {@link #install(File, File, List)} does.
+     *
+     * @param paths the paths of the files and directories relative to both directories
+     * @return the number of files that were copied instead of linked
+     */
+    public static int install(File cached, File target, List<String> privatePaths, Collection<String> paths) throws IOException {
+        Installer installer = new Installer(privatePaths);
+        for (String path : paths) {
+            Path file = new File(cached, path).toPath();
+            Path link = new File(target, path).toPath();
+            if (Files.isDirectory(file)) {
+                Files.createDirectories(link);
+            } else {
+                Files.createDirectories(link.getParent());
+                installer.install(file, link, path);
+            }
+        }
+        return installer.copied;
+    }
+
+    private static class Installer {
+        private final List<String> privatePaths;
+        private boolean linksSupported = true;
+        private int copied;
+
+        Installer(List<String> privatePaths) {
+            this.privatePaths = privatePaths;
+        }
+
+        void install(Path file, Path link, String relative) throws IOException {
+            Files.deleteIfExists(link);
+            if (linksSupported && !isPrivate(relative, privatePaths)) {
+                try {
+                    Files.createLink(link, file);
+                    return;
+                } catch (IOException e) {
+                    linksSupported = false;
+                } catch (UnsupportedOperationException e) {
+                    linksSupported = false;
+                }
+            }
+            Files.copy(file, link, StandardCopyOption.COPY_ATTRIBUTES);
+            copied++;
+        }
+    }
+
+    private static boolean isPrivate(String path, List<String> privatePaths) {
+        for (String privatePath : privatePaths) {
+            if (path.startsWith(privatePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
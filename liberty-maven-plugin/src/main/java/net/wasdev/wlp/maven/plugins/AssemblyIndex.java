@@ -0,0 +1,123 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers where the Liberty installation root is located inside an assembly
+ * archive, so that the archive is only scanned again when it changes.
+ * <p>
+ * Results are kept in memory for the goals of the current build and in a
+ * properties file for later builds. An archive is considered unchanged while
+ * its size and last modified time match the recorded ones.
+ */
+public class AssemblyIndex {
+
+    private static final String LAUNCH_JAR = "lib/ws-launch.jar";
+
+    private static final ConcurrentMap<String, Properties> memory = new ConcurrentHashMap<String, Properties>();
+
+    private final File indexFile;
+
+    public AssemblyIndex(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns the path of the installation root inside the archive, e.g.
+     * <code>wlp/</code>, or null if the archive does not contain a server.
+     */
+    public String getInstallRoot(File archive) throws IOException {
+        String key = archive.getCanonicalPath();
+        Properties record = memory.get(key);
+        if (!matches(record, archive)) {
+            record = load();
+            if (!matches(record, archive)) {
+                record = scan(archive);
+                store(record);
+            }
+            memory.put(key, record);
+        }
+        return record.getProperty("installRoot");
+    }
+
+    private boolean matches(Properties record, File archive) throws IOException {
+        return record != null
+                && archive.getCanonicalPath().equals(record.getProperty("archive"))
+                && String.valueOf(archive.length()).equals(record.getProperty("size"))
+                && String.valueOf(archive.lastModified()).equals(record.getProperty("lastModified"));
+    }
+
+    private Properties scan(File archive) throws IOException {
+        Properties record = new Properties();
+        record.setProperty("archive", archive.getCanonicalPath());
+        record.setProperty("size", String.valueOf(archive.length()));
+        record.setProperty("lastModified", String.valueOf(archive.lastModified()));
+
+        // the digest of the central directory is not recorded, checking it would cost as much as a scan
+        for (ZipCentralDirectory.Entry entry : ZipCentralDirectory.read(archive).getEntries()) {
+            String name = entry.getName();
+            if (name.endsWith(LAUNCH_JAR)) {
+                record.setProperty("installRoot", name.substring(0, name.length() - LAUNCH_JAR.length()));
+                break;
+            }
+        }
+        return record;
+    }
+
+    private Properties load() {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        Properties record = new Properties();
+        try {
+            InputStream in = new FileInputStream(indexFile);
+            try {
+                record.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the index will be rebuilt
+            return null;
+        }
+        return record;
+    }
+
+    private void store(Properties record) {
+        try {
+            indexFile.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(indexFile);
+            try {
+                record.store(out, "Generated by liberty-maven-plugin");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // the index is only an optimization
+            indexFile.delete();
+        }
+    }
+}
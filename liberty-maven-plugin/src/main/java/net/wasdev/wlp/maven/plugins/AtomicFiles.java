@@ -0,0 +1,88 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Writes files that are watched by the server so that it never sees a
+ * partially written file.
+ * <p>
+ * Content is staged in a hidden temporary file next to the target, whose
+ * extension the server does not recognize, and then renamed over the target.
+ */
+public class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Returns a new temporary file name in the directory of the target.
+     */
+    public static Path getStagingFile(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    /**
+     * Replaces the target with the staged file. The caller deletes the staged
+     * file if this fails.
+     */
+    public static void commit(Path staged, Path target) throws IOException {
+        try {
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static void copy(Path source, Path target) throws IOException {
+        Path staged = getStagingFile(target);
+        try {
+            Files.copy(source, staged);
+            commit(staged, target);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    public static void write(Path target, byte[] content) throws IOException {
+        Path staged = getStagingFile(target);
+        try {
+            Files.write(staged, content);
+            commit(staged, target);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    /**
+     * Creates a hard link to the source in place of the target.
+     */
+    public static void link(Path source, Path target) throws IOException {
+        Path staged = getStagingFile(target);
+        try {
+            Files.createLink(staged, source);
+            commit(staged, target);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+}
@@ -17,14 +17,27 @@ package net.wasdev.wlp.maven.plugins;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
 import java.text.MessageFormat;
-import java.util.Enumeration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 
 import net.wasdev.wlp.ant.install.InstallLibertyTask;
 
@@ -33,13 +46,10 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.settings.Server;
-import org.apache.tools.ant.taskdefs.Chmod;
-import org.apache.tools.ant.taskdefs.Expand;
 import org.apache.tools.ant.taskdefs.Java;
 import org.apache.tools.ant.types.Commandline.Argument;
 import org.codehaus.mojo.pluginsupport.util.ArtifactItem;
 import org.codehaus.plexus.util.FileUtils;
-import org.codehaus.plexus.util.IOUtil;
 
 /**
  * Basic Liberty Mojo Support
@@ -48,11 +58,15 @@ import org.codehaus.plexus.util.IOUtil;
  */
 public class BasicSupport extends AbstractLibertySupport {
 
+    protected static final String START_APP_MESSAGE_CODE = "CWWKZ0001I";
+
     //Note these next two are regular expressions, not just the code.
-    protected static final String START_APP_MESSAGE_REGEXP = "CWWKZ0001I.*";
+    protected static final String START_APP_MESSAGE_REGEXP = START_APP_MESSAGE_CODE + ".*";
 
     protected static final ResourceBundle messages = ResourceBundle.getBundle("net.wasdev.wlp.maven.plugins.MvnMessages");
 
+    private static final String LICENSE_INFO = "wlp/lafiles/LI_en";
+
     /**
      * Skips the specific goal
      */
@@ -78,6 +92,18 @@ public class BasicSupport extends AbstractLibertySupport {
     @Parameter(property = "assemblyInstallDirectory", defaultValue = "${project.build.directory}/liberty")
     protected File assemblyInstallDirectory;
     
+    /**
+     * Install the assembly from a machine-wide cache shared by all modules and builds.
+     */
+    @Parameter(property = "useAssemblyCache", defaultValue = "false")
+    protected boolean useAssemblyCache = false;
+
+    /**
+     * Location of the shared assembly cache. Defaults to wlp-assembly-cache in the local repository.
+     */
+    @Parameter(property = "assemblyCacheDirectory")
+    protected File assemblyCacheDirectory;
+
     /**
      * Installation directory of Liberty profile. 
      */
@@ -146,6 +172,13 @@ public class BasicSupport extends AbstractLibertySupport {
      */
     @Parameter
     protected ArtifactItem licenseArtifact;
+
+    /**
+     * Install the license by launching the license jar in a separate JVM instead of
+     * applying its content directly.
+     */
+    @Parameter(property = "forkLicenseInstall", defaultValue = "false")
+    protected boolean forkLicenseInstall = false;
     
     @Override
     protected void init() throws MojoExecutionException, MojoFailureException {
@@ -242,29 +275,15 @@ public class BasicSupport extends AbstractLibertySupport {
         log.debug(MessageFormat.format(messages.getString("debug.discover.server.home"), ""));
 
         File dir = null;
-        ZipFile zipFile = null;
 
         try {
-            zipFile = new ZipFile(archive);
-
-            Enumeration<?> n = zipFile.entries();
-            while (n.hasMoreElements()) {
-                ZipEntry entry = (ZipEntry) n.nextElement();
-                if (entry.getName().endsWith("lib/ws-launch.jar")) {
-                    File file = new File(assemblyInstallDirectory, entry.getName());
-                    dir = file.getParentFile().getParentFile();
-                    break;
-                }
+            File indexFile = new File(project.getBuild().getDirectory(), "liberty-assembly-index.properties");
+            String installRoot = new AssemblyIndex(indexFile).getInstallRoot(archive);
+            if (installRoot != null) {
+                dir = new File(assemblyInstallDirectory, installRoot);
             }
         } catch (IOException e) {
             throw new MojoExecutionException(MessageFormat.format(messages.getString("error.discover.server.home.fail"), archive), e);
-        } finally {
-            try {
-                zipFile.close();
-            } catch (Exception e) {
-                //Ignore it.
-            }
-
         }
 
         if (dir == null) {
@@ -295,13 +314,18 @@ public class BasicSupport extends AbstractLibertySupport {
     protected void installFromFile() throws Exception {
         // Check if there is a newer archive or missing marker to trigger assembly install
         File installMarker = new File(installDirectory, ".installed");
+        InstallManifest installed = null;
 
         if (!refresh) {
             if (!installMarker.exists()) {
                 refresh = true;
             } else if (assemblyArchive.lastModified() > installMarker.lastModified()) {
                 log.debug(MessageFormat.format(messages.getString("debug.detect.assembly.archive"), ""));
-                refresh = true;
+                installed = InstallManifest.read(installMarker);
+                if (installed == null) {
+                    // marker without a manifest, the changes cannot be determined
+                    refresh = true;
+                }
             }
         } else {
             log.debug(MessageFormat.format(messages.getString("debug.request.refresh"), ""));
@@ -320,29 +344,150 @@ public class BasicSupport extends AbstractLibertySupport {
 
             FileUtils.forceMkdir(installDirectory);
 
-            Expand unzip = (Expand) ant.createTask("unzip");
-
-            unzip.setSrc(assemblyArchive);
-            unzip.setDest(assemblyInstallDirectory.getCanonicalFile());
-            unzip.execute();
-
-            // Make scripts executable, since Java unzip ignores perms
-            Chmod chmod = (Chmod) ant.createTask("chmod");
-            chmod.setPerm("ugo+rx");
-            chmod.setDir(installDirectory);
-            chmod.setIncludes("bin/*");
-            chmod.setExcludes("bin/*.bat");
-            chmod.execute();
+            ZipCentralDirectory cd = ZipCentralDirectory.read(assemblyArchive);
+            if (useAssemblyCache) {
+                installFromCache(cd, null);
+            } else {
+                extractAssembly(assemblyInstallDirectory.getCanonicalFile(), cd.getEntries());
+            }
 
             // delete installMarker first in case it was packaged with the assembly
             installMarker.delete();
-            installMarker.createNewFile();
+            InstallManifest.create(cd).write(installMarker);
 
+        } else if (installed != null) {
+            updateFromFile(installed, installMarker);
         } else {
             log.info(MessageFormat.format(messages.getString("info.reuse.installed.assembly"), ""));
         }
     }
 
+    /**
+     * Applies only the entries of the assembly archive that differ from the installed ones.
+     * The user directory of the installation, which holds the servers and their
+     * applications, is left as it is.
+     */
+    private void updateFromFile(InstallManifest installed, File installMarker) throws Exception {
+        ZipCentralDirectory cd = ZipCentralDirectory.read(assemblyArchive);
+        InstallManifest current = InstallManifest.create(cd);
+        String usr = getInstallRootPath();
+        usr = usr.isEmpty() ? "usr/" : usr + "/usr/";
+        List<String> removed = new ArrayList<String>();
+        for (String name : installed.getRemovedEntries(current)) {
+            if (!name.startsWith(usr)) {
+                removed.add(name);
+            }
+        }
+        List<ZipCentralDirectory.Entry> changed = new ArrayList<ZipCentralDirectory.Entry>();
+        List<String> changedNames = new ArrayList<String>();
+        int changedFiles = 0;
+        for (ZipCentralDirectory.Entry entry : installed.getChangedEntries(cd)) {
+            if (!entry.getName().startsWith(usr)) {
+                changed.add(entry);
+                changedNames.add(entry.getName());
+                if (!entry.isDirectory()) {
+                    changedFiles++;
+                }
+            }
+        }
+
+        if (removed.isEmpty() && changedFiles == 0) {
+            // only the archive timestamp changed
+            log.info(MessageFormat.format(messages.getString("info.reuse.installed.assembly"), ""));
+            installMarker.setLastModified(System.currentTimeMillis());
+            return;
+        }
+
+        log.info(MessageFormat.format(messages.getString("info.update.assembly"), changedFiles, removed.size()));
+        File baseDir = assemblyInstallDirectory.getCanonicalFile();
+        for (String name : removed) {
+            File file = new File(baseDir, name);
+            if (file.getCanonicalPath().startsWith(baseDir.getPath() + File.separator)) {
+                file.delete();
+            }
+        }
+        if (useAssemblyCache) {
+            installFromCache(cd, changedNames);
+        } else {
+            extractAssembly(baseDir, changed);
+        }
+
+        installMarker.delete();
+        current.write(installMarker);
+    }
+
+    private void extractAssembly(File destDir, Collection<ZipCentralDirectory.Entry> entries) throws IOException {
+        long start = System.currentTimeMillis();
+        ArchiveExtractor extractor = new ArchiveExtractor();
+        extractor.extract(assemblyArchive, entries, destDir);
+        log.debug("Extracted " + entries.size() + " entries from " + assemblyArchive + " in " + (System.currentTimeMillis() - start) + " ms");
+
+        // Make scripts executable if the archive did not carry their permissions
+        String bin = getInstallRootPath();
+        bin = bin.isEmpty() ? "bin/" : bin + "/bin/";
+        for (String name : extractor.getFilesWithoutUnixModes()) {
+            if (name.startsWith(bin) && name.indexOf('/', bin.length()) < 0 && !name.endsWith(".bat")) {
+                makeExecutable(new File(destDir, name).toPath());
+            }
+        }
+    }
+
+    private static void makeExecutable(Path file) throws IOException {
+        if (!Files.getFileStore(file).supportsFileAttributeView("posix")) {
+            return;
+        }
+        Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+        permissions.addAll(Files.getPosixFilePermissions(file));
+        permissions.addAll(Arrays.asList(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_EXECUTE,
+                PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_EXECUTE,
+                PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_EXECUTE));
+        Files.setPosixFilePermissions(file, permissions);
+    }
+
+    /**
+     * @param paths the entries to install relative to the assembly install directory, or null to install all entries
+     */
+    private void installFromCache(final ZipCentralDirectory cd, Collection<String> paths) throws Exception {
+        File cacheDir = assemblyCacheDirectory;
+        if (cacheDir == null) {
+            cacheDir = new File(artifactRepository.getBasedir(), "wlp-assembly-cache");
+        }
+        // the central directory is only digested when the cache is used
+        String key = ZipCentralDirectory.readDigest(assemblyArchive);
+        File cached = new AssemblyCache(cacheDir).get(key, new AssemblyCache.Populator() {
+            @Override
+            public void populate(File directory) throws Exception {
+                extractAssembly(directory, cd.getEntries());
+            }
+        });
+        log.info(MessageFormat.format(messages.getString("info.install.assembly.cache"), cached));
+
+        // usr holds the servers, the license installation rewrites lafiles and lib/versions, and
+        // install-feature and fixes rewrite the feature manifests, the platform manifests, the
+        // tools and the fix records in place, so these stay private to each installation
+        String root = getInstallRootPath();
+        if (!root.isEmpty()) {
+            root += "/";
+        }
+        List<String> privatePaths = Arrays.asList(root + "usr/", root + "lafiles/", root + "lib/versions/",
+                root + "lib/features/", root + "lib/platform/", root + "lib/fixes/", root + "bin/tools/", root + "etc/");
+        int copied;
+        if (paths == null) {
+            copied = AssemblyCache.install(cached, assemblyInstallDirectory.getCanonicalFile(), privatePaths);
+        } else {
+            copied = AssemblyCache.install(cached, assemblyInstallDirectory.getCanonicalFile(), privatePaths, paths);
+        }
+        log.debug("Linked assembly from " + cached + ", " + copied + " files copied");
+    }
+
+    /**
+     * Returns the path of the installation directory relative to the assembly install directory.
+     */
+    protected String getInstallRootPath() throws IOException {
+        Path base = assemblyInstallDirectory.getCanonicalFile().toPath();
+        return base.relativize(installDirectory.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
     protected void installFromArchive() throws Exception {
         InstallLibertyTask installTask = (InstallLibertyTask) ant.createTask("antlib:net/wasdev/wlp/ant:install-liberty");
         if (installTask == null) {
@@ -397,6 +542,9 @@ public class BasicSupport extends AbstractLibertySupport {
             if (!hasSameLicense(license)) {
                 log.info(MessageFormat.format(messages.getString("info.install.license"), 
                         licenseArtifact.getGroupId() + ":" + licenseArtifact.getArtifactId() + ":" + licenseArtifact.getVersion()));
+                if (!forkLicenseInstall && installLicensePayload(license.getFile())) {
+                    return;
+                }
                 Java installLicenseTask = (Java) ant.createTask("java");
                 installLicenseTask.setJar(license.getFile());
                 Argument args = installLicenseTask.createArg();
@@ -412,33 +560,121 @@ public class BasicSupport extends AbstractLibertySupport {
         }
     }
     
+    /**
+     * Applies the payload of the license jar directly to the installation, without
+     * launching the jar in a separate JVM. Returns false if the jar contains anything
+     * besides plain installation files, or if its Applies-To header does not match
+     * the product, edition and version of the installation, in which case it has
+     * to be launched so the self extractor can check and report it.
+     */
+    private boolean installLicensePayload(File licenseJar) {
+        try {
+            String appliesTo = null;
+            JarFile jar = new JarFile(licenseJar);
+            try {
+                Manifest manifest = jar.getManifest();
+                if (manifest != null) {
+                    appliesTo = manifest.getMainAttributes().getValue("Applies-To");
+                }
+            } finally {
+                jar.close();
+            }
+            if (appliesTo == null
+                    || !new AppliesTo(appliesTo).matches(new File(assemblyInstallDirectory, "wlp/lib/versions"))) {
+                log.debug("License jar " + licenseJar + " does not apply to the installation: " + appliesTo);
+                return false;
+            }
+            List<ZipCentralDirectory.Entry> payload = new ArrayList<ZipCentralDirectory.Entry>();
+            for (ZipCentralDirectory.Entry entry : ZipCentralDirectory.read(licenseJar).getEntries()) {
+                String name = entry.getName();
+                if (name.startsWith("META-INF/") || name.startsWith("wlp/lib/extract/")) {
+                    // jar metadata and the self extractor itself
+                    continue;
+                }
+                if (!name.startsWith("wlp/") || name.endsWith("externaldependencies.xml")) {
+                    log.debug("License jar " + licenseJar + " requires the self extractor: " + name);
+                    return false;
+                }
+                payload.add(entry);
+            }
+            if (payload.isEmpty()) {
+                return false;
+            }
+            new ArchiveExtractor().extract(licenseJar, payload, assemblyInstallDirectory.getCanonicalFile());
+            log.debug("Installed " + payload.size() + " license entries from " + licenseJar);
+            return true;
+        } catch (IOException e) {
+            log.debug("Failed to apply license jar " + licenseJar + ", launching it instead", e);
+            return false;
+        }
+    }
+
     private boolean hasSameLicense(Artifact license) throws MojoExecutionException, IOException {
         boolean sameLicense = false;
         if (license != null) {
-            InputStream licenseInfo = getZipEntry(license.getFile(), "wlp/lafiles/LI_en");
-            if (licenseInfo == null) {
-                log.warn(MessageFormat.format(messages.getString("warn.install.license"), license.getId()));
-                return sameLicense;
-            } 
-            
-            File lic = new File(assemblyInstallDirectory, "wlp/lafiles/LI_en");
-            if (lic.exists()) {  
-                FileInputStream installedLicenseInfo = new FileInputStream(lic);
-                sameLicense = IOUtil.contentEquals(licenseInfo, installedLicenseInfo);
-                licenseInfo.close();
-                installedLicenseInfo.close();
+            ZipFile licenseJar = new ZipFile(license.getFile());
+            try {
+                ZipEntry licenseInfo = licenseJar.getEntry(LICENSE_INFO);
+                if (licenseInfo == null) {
+                    log.warn(MessageFormat.format(messages.getString("warn.install.license"), license.getId()));
+                    return sameLicense;
+                }
+
+                File lic = new File(assemblyInstallDirectory, LICENSE_INFO);
+                if (lic.exists() && lic.length() == licenseInfo.getSize()) {
+                    sameLicense = getInstalledLicenseCrc(lic) == licenseInfo.getCrc();
+                }
+            } finally {
+                licenseJar.close();
             }
         }
         return sameLicense;
     }
-    
-    private InputStream getZipEntry(File zip, String entry) throws IOException {
-        ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(zip));
-        for (ZipEntry e; (e = zipInputStream.getNextEntry()) != null;) {
-            if (e.getName().equals(entry)) {
-                return zipInputStream;
+
+    /**
+     * Returns the CRC of the installed license file. The CRC is persisted along with
+     * the size and last modified time of the file, so it is only computed again when
+     * the installed license changes or the persisted record is unreadable.
+     */
+    private long getInstalledLicenseCrc(File lic) throws IOException {
+        File digestFile = new File(project.getBuild().getDirectory(), "liberty-license.properties");
+        Properties digest = new Properties();
+        if (digestFile.exists()) {
+            InputStream in = new FileInputStream(digestFile);
+            try {
+                digest.load(in);
+            } catch (IllegalArgumentException e) {
+                // a malformed escape in a corrupt record
+                digest.clear();
+            } finally {
+                in.close();
+            }
+            if (lic.getCanonicalPath().equals(digest.getProperty("file"))
+                    && String.valueOf(lic.length()).equals(digest.getProperty("size"))
+                    && String.valueOf(lic.lastModified()).equals(digest.getProperty("lastModified"))) {
+                try {
+                    return Long.parseLong(digest.getProperty("crc"));
+                } catch (NumberFormatException e) {
+                    // a missing or corrupt CRC, computed again from the installed license
+                    log.debug("Invalid license record " + digestFile + ": " + e.getMessage());
+                }
             }
         }
-        return null;
+
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(lic.toPath()));
+
+        digest.setProperty("file", lic.getCanonicalPath());
+        digest.setProperty("size", String.valueOf(lic.length()));
+        digest.setProperty("lastModified", String.valueOf(lic.lastModified()));
+        digest.setProperty("crc", String.valueOf(crc.getValue()));
+        digestFile.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(digestFile);
+        try {
+            digest.store(out, "Generated by liberty-maven-plugin");
+        } finally {
+            out.close();
+        }
+        return crc.getValue();
     }
 }
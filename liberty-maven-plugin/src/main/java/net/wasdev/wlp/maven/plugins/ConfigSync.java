@@ -0,0 +1,203 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.codehaus.plexus.util.DirectoryScanner;
+
+/**
+ * Synchronizes configuration files into a server directory.
+ * <p>
+ * A file is only written when its size or content differs from the file
+ * already in the server directory, so an unchanged configuration leaves the
+ * server directory untouched and the server does not reload it. The files
+ * that were synchronized are recorded so that files which are no longer part
+ * of the configuration can be removed on a later run.
+ */
+public class ConfigSync {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final File targetDirectory;
+
+    private final Set<String> synced = new TreeSet<String>();
+
+    private final List<String> updated = new ArrayList<String>();
+
+    private final List<String> removed = new ArrayList<String>();
+
+    private int unchanged;
+
+    public ConfigSync(File targetDirectory) {
+        this.targetDirectory = targetDirectory;
+    }
+
+    /**
+     * Synchronizes all files of the source directory tree into the target
+     * directory. Version control and editor files are skipped, like the default
+     * excludes of an Ant file set.
+     */
+    public void copyDirectory(File sourceDirectory) throws IOException {
+        DirectoryScanner scanner = new DirectoryScanner();
+        scanner.setBasedir(sourceDirectory);
+        scanner.addDefaultExcludes();
+        scanner.scan();
+        for (String name : scanner.getIncludedFiles()) {
+            copyFile(new File(sourceDirectory, name), name.replace(File.separatorChar, '/'));
+        }
+    }
+
+    /**
+     * Synchronizes a file to the given path relative to the target directory.
+     */
+    public void copyFile(File sourceFile, String relativePath) throws IOException {
+        File target = track(relativePath);
+        if (target.isFile() && target.length() == sourceFile.length() && sameContent(sourceFile, target)) {
+            unchanged++;
+            return;
+        }
+        makeParentDirectory(target);
+        AtomicFiles.copy(sourceFile.toPath(), target.toPath());
+        updated.add(relativePath);
+    }
+
+    /**
+     * Synchronizes generated content to the given path relative to the target directory.
+     */
+    public void writeFile(byte[] content, String relativePath) throws IOException {
+        File target = track(relativePath);
+        if (target.isFile() && target.length() == content.length
+                && Arrays.equals(content, Files.readAllBytes(target.toPath()))) {
+            unchanged++;
+            return;
+        }
+        makeParentDirectory(target);
+        AtomicFiles.write(target.toPath(), content);
+        updated.add(relativePath);
+    }
+
+    /**
+     * Records the synchronized files and removes the files recorded by the
+     * previous synchronization that were not synchronized this time.
+     *
+     * @param record file listing the synchronized files
+     * @param removeStale whether files that are no longer synchronized are deleted
+     */
+    public void finish(File record, boolean removeStale) throws IOException {
+        if (removeStale && record.isFile()) {
+            BufferedReader reader = Files.newBufferedReader(record.toPath(), UTF_8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty() && !synced.contains(line) && new File(targetDirectory, line).delete()) {
+                        removed.add(line);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        makeParentDirectory(record);
+        BufferedWriter writer = Files.newBufferedWriter(record.toPath(), UTF_8);
+        try {
+            for (String path : synced) {
+                writer.write(path);
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public List<String> getUpdated() {
+        return updated;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    private File track(String relativePath) {
+        synced.add(relativePath);
+        return new File(targetDirectory, relativePath);
+    }
+
+    private static boolean sameContent(File file1, File file2) throws IOException {
+        InputStream in1 = new BufferedInputStream(Files.newInputStream(file1.toPath()), BUFFER_SIZE);
+        try {
+            InputStream in2 = new BufferedInputStream(Files.newInputStream(file2.toPath()), BUFFER_SIZE);
+            try {
+                byte[] buffer1 = new byte[BUFFER_SIZE];
+                byte[] buffer2 = new byte[BUFFER_SIZE];
+                while (true) {
+                    int count1 = readFully(in1, buffer1);
+                    int count2 = readFully(in2, buffer2);
+                    if (count1 != count2) {
+                        return false;
+                    }
+                    if (count1 <= 0) {
+                        return true;
+                    }
+                    for (int i = 0; i < count1; i++) {
+                        if (buffer1[i] != buffer2[i]) {
+                            return false;
+                        }
+                    }
+                }
+            } finally {
+                in2.close();
+            }
+        } finally {
+            in1.close();
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int count;
+        while (total < buffer.length && (count = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static void makeParentDirectory(File file) {
+        File parentDir = file.getParentFile();
+        if (parentDir != null) {
+            parentDir.mkdirs();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directory trees and individual files for changes.
+ * <p>
+ * Changes are returned in batches. A batch starts with the first change and
+ * ends once no further change has been seen for a quiet period, so that a
+ * save of several files or a branch switch is handled at once.
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private final WatchService watcher;
+
+    private final Map<WatchKey, Path> keys = new HashMap<WatchKey, Path>();
+
+    private final Set<Path> trees = new HashSet<Path>();
+
+    public DirectoryWatcher() throws IOException {
+        watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Watches a directory and all of its subdirectories, including the ones
+     * created later.
+     */
+    public void watchTree(File dir) throws IOException {
+        if (dir.isDirectory()) {
+            Path root = dir.getCanonicalFile().toPath();
+            trees.add(root);
+            registerTree(root, null);
+        }
+    }
+
+    /**
+     * Watches a single file. Other files in the same directory are reported too.
+     */
+    public void watchFile(File file) throws IOException {
+        File dir = file.getCanonicalFile().getParentFile();
+        if (dir != null && dir.isDirectory()) {
+            register(dir.toPath());
+        }
+    }
+
+    /**
+     * Waits for the next batch of changes.
+     *
+     * @param quietPeriod time in milliseconds without changes that ends a batch
+     * @return the files that were created, modified or deleted
+     */
+    public Set<File> take(long quietPeriod) throws IOException, InterruptedException {
+        Set<File> changes = new TreeSet<File>();
+        WatchKey key = watcher.take();
+        while (key != null) {
+            Path dir = keys.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    continue;
+                }
+                Path path = dir.resolve((Path) event.context());
+                changes.add(path.toFile());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && isInTree(path)
+                        && Files.isDirectory(path)) {
+                    // files may have been created before the new directory was registered
+                    registerTree(path, changes);
+                }
+            }
+            if (!key.reset()) {
+                keys.remove(key);
+            }
+            key = watcher.poll(quietPeriod, TimeUnit.MILLISECONDS);
+        }
+        return changes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    private boolean isInTree(Path path) {
+        for (Path root : trees) {
+            if (path.startsWith(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerTree(Path root, final Set<File> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (files != null) {
+                    files.add(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void register(Path dir) throws IOException {
+        if (!keys.containsValue(dir)) {
+            WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            keys.put(key, dir);
+        }
+    }
+}
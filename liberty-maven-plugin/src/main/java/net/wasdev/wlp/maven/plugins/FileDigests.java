@@ -0,0 +1,165 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * SHA-1 digests of files, remembered by path, size and last modified time.
+ * <p>
+ * A file is only read again when its size or last modified time changes.
+ * Digests are kept in a properties file so that later builds can reuse them.
+ */
+public class FileDigests {
+
+    private final File indexFile;
+
+    // the digests of this index only, so projects and concurrent builds do not share them
+    private final Properties memory = new Properties();
+
+    private boolean loaded;
+
+    private boolean modified;
+
+    public FileDigests(File indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    public String getDigest(File file) throws IOException {
+        String key = getKey(file);
+        String digest;
+        synchronized (this) {
+            load();
+            digest = memory.getProperty(key);
+        }
+        if (digest == null) {
+            digest = computeDigest(file);
+            put(key, digest);
+        }
+        return digest;
+    }
+
+    /**
+     * Records the digest of a file whose content is known, e.g. a fresh copy of
+     * a file whose digest was just computed.
+     */
+    public void setDigest(File file, String digest) throws IOException {
+        put(getKey(file), digest);
+    }
+
+    /**
+     * Writes the digests to the index file if any were added.
+     */
+    public synchronized void store() {
+        if (!modified) {
+            return;
+        }
+        // forget files that changed since their digest was computed
+        for (String key : memory.stringPropertyNames()) {
+            int mtimeIndex = key.lastIndexOf('|');
+            int sizeIndex = key.lastIndexOf('|', mtimeIndex - 1);
+            File file = new File(key.substring(0, sizeIndex));
+            if (!key.substring(sizeIndex).equals("|" + file.length() + "|" + file.lastModified())) {
+                memory.remove(key);
+            }
+        }
+        try {
+            indexFile.getParentFile().mkdirs();
+            OutputStream out = new FileOutputStream(indexFile);
+            try {
+                memory.store(out, "Generated by liberty-maven-plugin");
+            } finally {
+                out.close();
+            }
+            modified = false;
+        } catch (IOException e) {
+            // the index is only an optimization
+            indexFile.delete();
+        }
+    }
+
+    private synchronized void put(String key, String digest) {
+        memory.setProperty(key, digest);
+        modified = true;
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!indexFile.isFile()) {
+            return;
+        }
+        Properties index = new Properties();
+        try {
+            InputStream in = new FileInputStream(indexFile);
+            try {
+                index.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the index will be rebuilt
+            return;
+        }
+        for (String key : index.stringPropertyNames()) {
+            if (memory.getProperty(key) == null) {
+                memory.setProperty(key, index.getProperty(key));
+            }
+        }
+    }
+
+    private static String getKey(File file) throws IOException {
+        return file.getCanonicalPath() + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    private static String computeDigest(File file) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                md.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : md.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Waits until HTTP endpoints respond.
+ * <p>
+ * All endpoints are probed at the same time. Each endpoint is retried with an
+ * exponentially growing delay that is capped at a short interval, so a probe
+ * finishes shortly after its endpoint starts serving requests.
+ */
+public class HttpProbe {
+
+    private static final long INITIAL_DELAY = 25;
+
+    private static final long MAX_DELAY = 500;
+
+    private static final int MAX_CONNECT_TIMEOUT = 2000;
+
+    private static final String DEFAULT_HTTP_PORT = "9080";
+
+    private static final Pattern VARIABLE = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    private static final int MAX_VARIABLE_DEPTH = 10;
+
+    /**
+     * An endpoint to probe.
+     */
+    public static class Endpoint {
+        private final URL url;
+        private final boolean anyResponse;
+
+        /**
+         * @param url the URL to request
+         * @param anyResponse whether any HTTP response means the endpoint is ready,
+         *        rather than only a successful or redirect response
+         */
+        public Endpoint(URL url, boolean anyResponse) {
+            this.url = url;
+            this.anyResponse = anyResponse;
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        @Override
+        public String toString() {
+            return url.toString();
+        }
+    }
+
+    /**
+     * Probes the endpoints until all of them are ready or the timeout expires.
+     *
+     * @return the endpoints that were not ready in time, empty if all were ready
+     */
+    public static List<Endpoint> waitFor(Collection<Endpoint> endpoints, long timeout) throws InterruptedException {
+        List<Endpoint> notReady = new ArrayList<Endpoint>();
+        if (endpoints.isEmpty()) {
+            return notReady;
+        }
+        final long endTime = System.currentTimeMillis() + timeout;
+        ExecutorService executor = Executors.newFixedThreadPool(endpoints.size());
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+            for (final Endpoint endpoint : endpoints) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws InterruptedException {
+                        return probe(endpoint, endTime);
+                    }
+                }));
+            }
+            int i = 0;
+            for (Endpoint endpoint : endpoints) {
+                try {
+                    if (!futures.get(i++).get()) {
+                        notReady.add(endpoint);
+                    }
+                } catch (ExecutionException e) {
+                    notReady.add(endpoint);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return notReady;
+    }
+
+    private static boolean probe(Endpoint endpoint, long endTime) throws InterruptedException {
+        long delay = INITIAL_DELAY;
+        while (true) {
+            long remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            if (isReady(endpoint, (int) Math.min(remaining, MAX_CONNECT_TIMEOUT))) {
+                return true;
+            }
+            remaining = endTime - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(delay, remaining));
+            delay = Math.min(delay * 2, MAX_DELAY);
+        }
+    }
+
+    private static boolean isReady(Endpoint endpoint, int timeout) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) endpoint.url.openConnection();
+            connection.setConnectTimeout(timeout);
+            connection.setReadTimeout(timeout);
+            connection.setInstanceFollowRedirects(false);
+            connection.setUseCaches(false);
+            int code = connection.getResponseCode();
+            return endpoint.anyResponse || (code >= 200 && code < 400);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Returns the HTTP endpoint URL configured by the <code>httpEndpoint</code>
+     * elements of the server configuration, or null if none is configured or
+     * its port cannot be resolved. The port defaults to 9080, as it does in the
+     * server. Variables are resolved from the <code>variable</code> elements,
+     * the bootstrap.properties and the server.env of the server directory and
+     * the environment.
+     */
+    public static URL getServerEndpoint(File serverXML, File configDir) throws Exception {
+        if (!serverXML.isFile()) {
+            return null;
+        }
+        ServerConfigDocument config = ServerConfigDocument.getInstance(serverXML, configDir);
+        String[] endpoint = config.getHttpEndpoint();
+        if (endpoint == null) {
+            return null;
+        }
+
+        // later sources take precedence, as in the server
+        Map<String, String> variables = new HashMap<String, String>(config.getVariableDefaults());
+        for (Map.Entry<String, String> env : System.getenv().entrySet()) {
+            variables.put("env." + env.getKey(), env.getValue());
+        }
+        File serverDirectory = serverXML.getParentFile();
+        for (Map.Entry<Object, Object> env : load(new File(serverDirectory, "server.env")).entrySet()) {
+            variables.put(env.getKey().toString(), env.getValue().toString());
+            variables.put("env." + env.getKey(), env.getValue().toString());
+        }
+        for (Map.Entry<Object, Object> property : load(new File(serverDirectory, "bootstrap.properties")).entrySet()) {
+            variables.put(property.getKey().toString(), property.getValue().toString());
+        }
+        variables.putAll(config.getVariables());
+
+        String host = endpoint[0] == null ? null : resolve(endpoint[0], variables);
+        String port = endpoint[1] == null ? DEFAULT_HTTP_PORT : resolve(endpoint[1], variables).trim();
+        int portNumber;
+        try {
+            portNumber = Integer.parseInt(port);
+        } catch (NumberFormatException e) {
+            // e.g. a variable that is only set when the server starts
+            return null;
+        }
+        if (portNumber < 0) {
+            return null;
+        }
+        if (host == null || "*".equals(host) || "0.0.0.0".equals(host)) {
+            host = "localhost";
+        }
+        return new URL("http", host, portNumber, "/");
+    }
+
+    private static Properties load(File file) throws IOException {
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Replaces the variables of a value, including variables in the values of
+     * variables. Variables that are not set are left as they are.
+     */
+    private static String resolve(String value, Map<String, String> variables) {
+        for (int i = 0; i < MAX_VARIABLE_DEPTH && value.contains("${"); i++) {
+            Matcher matcher = VARIABLE.matcher(value);
+            StringBuffer sb = new StringBuffer();
+            boolean replaced = false;
+            while (matcher.find()) {
+                String replacement = variables.get(matcher.group(1));
+                replaced |= replacement != null;
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+            }
+            matcher.appendTail(sb);
+            if (!replaced) {
+                break;
+            }
+            value = sb.toString();
+        }
+        return value;
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the name, size and CRC of every file entry of an installed assembly.
+ * <p>
+ * The manifest is stored in the <code>.installed</code> marker so that a newer
+ * assembly archive can be applied by rewriting only the entries that differ.
+ */
+public class InstallManifest {
+
+    private static final String HEADER = "# liberty-maven-plugin install manifest";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, String> entries = new TreeMap<String, String>();
+
+    private InstallManifest() {
+    }
+
+    public static InstallManifest create(ZipCentralDirectory cd) {
+        InstallManifest manifest = new InstallManifest();
+        for (ZipCentralDirectory.Entry entry : cd.getEntries()) {
+            if (!entry.isDirectory()) {
+                manifest.entries.put(entry.getName(), toRecord(entry));
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads a manifest from an install marker. Returns null if the marker does
+     * not contain a manifest, e.g. when it was created by an older plugin version.
+     */
+    public static InstallManifest read(File marker) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(marker.toPath(), UTF_8);
+        try {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            InstallManifest manifest = new InstallManifest();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(" ", 3);
+                if (fields.length != 3) {
+                    return null;
+                }
+                manifest.entries.put(fields[2], fields[0] + " " + fields[1]);
+            }
+            return manifest;
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void write(File marker) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(marker.toPath(), UTF_8);
+        try {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(entry.getValue());
+                writer.write(' ');
+                writer.write(entry.getKey());
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Returns true if the file entry with the given name is part of the assembly.
+     */
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Returns the entries of this manifest that are not part of the given one.
+     */
+    public List<String> getRemovedEntries(InstallManifest current) {
+        List<String> removed = new ArrayList<String>();
+        for (String name : entries.keySet()) {
+            if (!current.entries.containsKey(name)) {
+                removed.add(name);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the central directory entries that are new or differ from this manifest,
+     * along with all directory entries.
+     */
+    public List<ZipCentralDirectory.Entry> getChangedEntries(ZipCentralDirectory cd) {
+        List<ZipCentralDirectory.Entry> changed = new ArrayList<ZipCentralDirectory.Entry>();
+        for (ZipCentralDirectory.Entry entry : cd.getEntries()) {
+            if (entry.isDirectory() || !toRecord(entry).equals(entries.get(entry.getName()))) {
+                changed.add(entry);
+            }
+        }
+        return changed;
+    }
+
+    private static String toRecord(ZipCentralDirectory.Entry entry) {
+        return Long.toHexString(entry.getCrc()) + " " + entry.getSize();
+    }
+}
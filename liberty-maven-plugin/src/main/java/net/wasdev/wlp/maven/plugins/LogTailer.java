@@ -0,0 +1,215 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Follows a log file and waits for lines matching a set of patterns.
+ * <p>
+ * Appended bytes are read incrementally from the last read offset, so every
+ * line is only read and matched once. The tailer wakes up when the log
+ * directory reports a change and also checks the file at a short interval in
+ * case change events are delayed or not supported. A log file that is rotated
+ * or truncated is read again from the start.
+ */
+public class LogTailer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final long POLL_INTERVAL = 250;
+
+    private final Path logFile;
+
+    private final String prefix;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+    private long offset;
+
+    private Object fileKey;
+
+    /**
+     * @param logFile the log file to follow
+     * @param prefix text every awaited line contains, used to skip other lines
+     *        before matching the patterns, or null
+     */
+    public LogTailer(File logFile, String prefix) {
+        this.logFile = logFile.toPath();
+        this.prefix = prefix;
+    }
+
+    /**
+     * Skips the content of the log file up to the given offset.
+     */
+    public void seek(long offset) throws IOException {
+        try {
+            fileKey = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+            this.offset = offset;
+        } catch (NoSuchFileException e) {
+            this.offset = 0;
+        }
+        partialLine.reset();
+    }
+
+    /**
+     * Waits until each of the patterns has been found in a line of the log.
+     *
+     * @return the patterns that were not found before the timeout, empty if all were found
+     */
+    public List<Pattern> waitFor(Collection<Pattern> patterns, long timeout) throws IOException, InterruptedException {
+        List<Pattern> remaining = new ArrayList<Pattern>(patterns);
+        long endTime = System.currentTimeMillis() + timeout;
+
+        WatchService watcher = null;
+        try {
+            while (true) {
+                readLines(remaining);
+                long wait = endTime - System.currentTimeMillis();
+                if (remaining.isEmpty() || wait <= 0) {
+                    return remaining;
+                }
+                if (watcher == null) {
+                    watcher = watch();
+                }
+                long interval = Math.min(wait, POLL_INTERVAL);
+                if (watcher != null) {
+                    WatchKey key = watcher.poll(interval, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                } else {
+                    Thread.sleep(interval);
+                }
+            }
+        } finally {
+            if (watcher != null) {
+                watcher.close();
+            }
+        }
+    }
+
+    private WatchService watch() {
+        Path dir = logFile.getParent();
+        if (dir == null || !Files.isDirectory(dir)) {
+            // the server has not created its log directory yet
+            return null;
+        }
+        WatchService watcher = null;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            return watcher;
+        } catch (IOException e) {
+            // fall back to polling
+        } catch (ClosedWatchServiceException e) {
+            // fall back to polling
+        } catch (UnsupportedOperationException e) {
+            // fall back to polling
+        }
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return null;
+    }
+
+    private void readLines(List<Pattern> remaining) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(logFile, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        Object key = attrs.fileKey();
+        if ((key != null && !key.equals(fileKey)) || attrs.size() < offset) {
+            // new or rotated log file
+            offset = 0;
+            partialLine.reset();
+        }
+        fileKey = key;
+        if (attrs.size() == offset) {
+            return;
+        }
+
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try {
+            channel.position(offset);
+            int count;
+            while (!remaining.isEmpty() && (count = channel.read(buffer)) > 0) {
+                offset += count;
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < count; i++) {
+                    if (bytes[i] == '\n') {
+                        partialLine.write(bytes, start, i - start);
+                        match(new String(partialLine.toByteArray(), UTF_8), remaining);
+                        partialLine.reset();
+                        start = i + 1;
+                    }
+                }
+                partialLine.write(bytes, start, count - start);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void match(String line, List<Pattern> remaining) {
+        if (prefix != null && !line.contains(prefix)) {
+            return;
+        }
+        Iterator<Pattern> iter = remaining.iterator();
+        while (iter.hasNext()) {
+            if (iter.next().matcher(line).find()) {
+                iter.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,507 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes server files as an OCI image layout.
+ * <p>
+ * The layers and the configuration of a base image, which provides the
+ * operating system and Java, can be read from another OCI image layout. Its
+ * layers are put before the server layers. Each server layer is a gzipped tar stream written by {@link TarWriter}, with its
+ * entries sorted by name and directory modes of 0755, or 0775 in layers that
+ * the server writes to, and file modes of 0755 or 0644. The server files
+ * belong to the owner set with {@link #setOwner(int, int)}, which the image
+ * also runs as, and the directories above them to root. A layer whose files
+ * did not change therefore keeps its digest, and
+ * registries and container engines reuse it. Blobs that are no longer
+ * referenced are removed from the layout.
+ */
+public class OciImageWriter {
+
+    private static final String MANIFEST_MEDIA_TYPE = "application/vnd.oci.image.manifest.v1+json";
+    private static final String CONFIG_MEDIA_TYPE = "application/vnd.oci.image.config.v1+json";
+    private static final String LAYER_MEDIA_TYPE = "application/vnd.oci.image.layer.v1.tar+gzip";
+    private static final String INDEX_MEDIA_TYPE = "application/vnd.oci.image.index.v1+json";
+    private static final String DOCKER_LIST_MEDIA_TYPE = "application/vnd.docker.distribution.manifest.list.v2+json";
+    private static final String REF_NAME = "org.opencontainers.image.ref.name";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File layoutDirectory;
+
+    private final File blobsDirectory;
+
+    private final String root;
+
+    private final Map<String, List<ServerLayout.Entry>> layers = new LinkedHashMap<String, List<ServerLayout.Entry>>();
+
+    private final Set<String> groupWritableLayers = new HashSet<String>();
+
+    private int uid;
+
+    private int gid;
+
+    private String user;
+
+    private File baseLayoutDirectory;
+
+    private Map<String, Object> baseManifest;
+
+    private Map<String, Object> baseConfig;
+
+    /**
+     * @param root the directory of the image that contains the server files, e.g. /opt/ibm/wlp
+     */
+    public OciImageWriter(File layoutDirectory, String root) {
+        this.layoutDirectory = layoutDirectory;
+        this.blobsDirectory = new File(layoutDirectory, "blobs/sha256");
+        String path = root.replace('\\', '/');
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        this.root = path;
+    }
+
+    /**
+     * Adds a layer. Layers are applied in the order they are added, and empty
+     * layers are left out.
+     */
+    public void addLayer(String name, List<ServerLayout.Entry> entries) {
+        addLayer(name, entries, false);
+    }
+
+    /**
+     * Adds a layer whose directories can be written by the group of the owner
+     * if <code>groupWritable</code> is set, so the server can create files in
+     * them when the image runs as another user of that group.
+     */
+    public void addLayer(String name, List<ServerLayout.Entry> entries, boolean groupWritable) {
+        if (!entries.isEmpty()) {
+            layers.put(name, entries);
+            if (groupWritable) {
+                groupWritableLayers.add(name);
+            }
+        }
+    }
+
+    /**
+     * Sets the numeric user and group that own the server files and that the
+     * image runs as. Without an owner, the files belong to root and the user
+     * of the base image is kept.
+     */
+    public void setOwner(int uid, int gid) {
+        this.uid = uid;
+        this.gid = gid;
+        this.user = uid + ":" + gid;
+    }
+
+    /**
+     * Uses an image of another OCI image layout as the base of the image.
+     *
+     * @param tag the reference name of the image in the layout, or null if the layout contains one image
+     * @param architecture the architecture of the image to select from a multi-platform image
+     * @param os the operating system of the image to select from a multi-platform image
+     */
+    public void setBaseImage(File baseLayoutDirectory, String tag, String architecture, String os) throws IOException {
+        List<Map<String, Object>> candidates = new ArrayList<Map<String, Object>>();
+        for (Map<String, Object> descriptor : getObjects(readJson(baseLayoutDirectory, null), "manifests")) {
+            Object annotations = descriptor.get("annotations");
+            Object refName = annotations instanceof Map ? ((Map<?, ?>) annotations).get(REF_NAME) : null;
+            if (tag == null || tag.equals(refName)) {
+                candidates.add(descriptor);
+            }
+        }
+        List<Map<String, Object>> manifests = new ArrayList<Map<String, Object>>();
+        for (Map<String, Object> descriptor : candidates) {
+            Object mediaType = descriptor.get("mediaType");
+            if (!INDEX_MEDIA_TYPE.equals(mediaType) && !DOCKER_LIST_MEDIA_TYPE.equals(mediaType)) {
+                manifests.add(descriptor);
+                continue;
+            }
+            // a multi-platform image
+            for (Map<String, Object> platformManifest : getObjects(readJson(baseLayoutDirectory, getDigest(descriptor)), "manifests")) {
+                Object platform = platformManifest.get("platform");
+                if (platform instanceof Map && architecture.equals(((Map<?, ?>) platform).get("architecture"))
+                        && os.equals(((Map<?, ?>) platform).get("os"))) {
+                    manifests.add(platformManifest);
+                }
+            }
+        }
+        if (manifests.size() != 1) {
+            throw new IOException("Expected one " + os + "/" + architecture + " image" + (tag == null ? "" : " named " + tag)
+                    + " in the OCI image layout " + baseLayoutDirectory + ", found " + manifests.size());
+        }
+        Map<String, Object> manifest = toObject(readJson(baseLayoutDirectory, getDigest(manifests.get(0))));
+        Object config = manifest.get("config");
+        if (!(config instanceof Map)) {
+            throw new IOException("The image manifest in " + baseLayoutDirectory + " has no configuration");
+        }
+        this.baseConfig = toObject(readJson(baseLayoutDirectory, getDigest(toObject(config))));
+        this.baseManifest = manifest;
+        this.baseLayoutDirectory = baseLayoutDirectory;
+    }
+
+    /**
+     * Writes the layers, the image configuration and the manifest, and tags the
+     * manifest in the index of the layout.
+     *
+     * @param architecture the architecture of the image if it has no base image
+     * @param os the operating system of the image if it has no base image
+     * @param command the command the image runs, or null to leave it to the base image
+     * @return the layers that were written
+     */
+    public List<Layer> write(String tag, String architecture, String os, List<String> command) throws IOException {
+        Files.createDirectories(blobsDirectory.toPath());
+        Set<String> referenced = new HashSet<String>();
+        List<Object> layerDescriptors = new ArrayList<Object>();
+        List<Object> diffIds = new ArrayList<Object>();
+        List<Object> history = new ArrayList<Object>();
+        Map<String, Object> config = new LinkedHashMap<String, Object>();
+        if (baseManifest != null) {
+            config.putAll(baseConfig);
+            for (Map<String, Object> layer : getObjects(baseManifest, "layers")) {
+                String digest = getDigest(layer);
+                File blob = getBlobFile(layoutDirectory, digest);
+                if (!blob.isFile()) {
+                    Files.createDirectories(blob.getParentFile().toPath());
+                    try {
+                        AtomicFiles.link(getBlobFile(baseLayoutDirectory, digest).toPath(), blob.toPath());
+                    } catch (IOException e) {
+                        // not on the same file system
+                        AtomicFiles.copy(getBlobFile(baseLayoutDirectory, digest).toPath(), blob.toPath());
+                    }
+                }
+                referenced.add(digest);
+                layerDescriptors.add(layer);
+            }
+            Object rootfs = baseConfig.get("rootfs");
+            if (rootfs instanceof Map && ((Map<?, ?>) rootfs).get("diff_ids") instanceof List) {
+                diffIds.addAll((List<?>) ((Map<?, ?>) rootfs).get("diff_ids"));
+            }
+            if (baseConfig.get("history") instanceof List) {
+                history.addAll((List<?>) baseConfig.get("history"));
+            }
+        } else {
+            config.put("architecture", architecture);
+            config.put("os", os);
+        }
+
+        List<Layer> written = writeLayers();
+        for (Layer layer : written) {
+            layerDescriptors.add(new Descriptor(LAYER_MEDIA_TYPE, layer.getDigest(), layer.getSize()).toMap(null));
+            referenced.add(layer.getDigest());
+            diffIds.add(layer.getDiffId());
+            Map<String, Object> step = new LinkedHashMap<String, Object>();
+            step.put("created_by", "liberty-maven-plugin: " + layer.getName());
+            history.add(step);
+        }
+
+        // like the CMD instruction of a Dockerfile, the entrypoint and environment of the base image are kept
+        Map<String, Object> runConfig = new LinkedHashMap<String, Object>();
+        if (config.get("config") instanceof Map) {
+            runConfig.putAll(toObject(config.get("config")));
+        }
+        if (command != null) {
+            runConfig.put("Cmd", new ArrayList<Object>(command));
+        }
+        if (user != null) {
+            runConfig.put("User", user);
+        }
+        config.put("config", runConfig);
+        Map<String, Object> rootfs = new LinkedHashMap<String, Object>();
+        rootfs.put("type", "layers");
+        rootfs.put("diff_ids", diffIds);
+        config.put("rootfs", rootfs);
+        config.put("history", history);
+        Descriptor configBlob = writeBlob(CONFIG_MEDIA_TYPE, Json.toString(config));
+        referenced.add(configBlob.digest);
+
+        Map<String, Object> manifest = new LinkedHashMap<String, Object>();
+        manifest.put("schemaVersion", 2L);
+        manifest.put("mediaType", MANIFEST_MEDIA_TYPE);
+        manifest.put("config", configBlob.toMap(null));
+        manifest.put("layers", layerDescriptors);
+        Descriptor manifestBlob = writeBlob(MANIFEST_MEDIA_TYPE, Json.toString(manifest));
+        referenced.add(manifestBlob.digest);
+
+        Map<String, Object> index = new LinkedHashMap<String, Object>();
+        index.put("schemaVersion", 2L);
+        index.put("manifests", Arrays.<Object> asList(manifestBlob.toMap(tag)));
+        AtomicFiles.write(new File(layoutDirectory, "index.json").toPath(), Json.toString(index).getBytes(UTF_8));
+        AtomicFiles.write(new File(layoutDirectory, "oci-layout").toPath(), "{\"imageLayoutVersion\":\"1.0.0\"}".getBytes(UTF_8));
+
+        File[] blobs = blobsDirectory.listFiles();
+        if (blobs != null) {
+            for (File blob : blobs) {
+                if (!referenced.contains("sha256:" + blob.getName())) {
+                    blob.delete();
+                }
+            }
+        }
+        return written;
+    }
+
+    private List<Layer> writeLayers() throws IOException {
+        int threads = Math.min(layers.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            List<Future<Layer>> futures = new ArrayList<Future<Layer>>();
+            for (final Map.Entry<String, List<ServerLayout.Entry>> layer : layers.entrySet()) {
+                futures.add(executor.submit(new Callable<Layer>() {
+                    @Override
+                    public Layer call() throws IOException {
+                        return writeLayer(layer.getKey(), layer.getValue());
+                    }
+                }));
+            }
+            List<Layer> written = new ArrayList<Layer>();
+            for (Future<Layer> future : futures) {
+                try {
+                    written.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Writing the image layers was interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Failed to write the image layers", e.getCause());
+                }
+            }
+            return written;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Layer writeLayer(String name, List<ServerLayout.Entry> entries) throws IOException {
+        // every layer carries the parent directories of its files
+        TreeMap<String, ServerLayout.Entry> sorted = new TreeMap<String, ServerLayout.Entry>();
+        String[] rootSegments = root.isEmpty() ? new String[0] : root.split("/");
+        String rootPath = "";
+        for (String segment : rootSegments) {
+            rootPath += segment + "/";
+            sorted.put(rootPath, null);
+        }
+        for (ServerLayout.Entry entry : entries) {
+            String entryName = rootPath + entry.getName();
+            sorted.put(entryName, entry);
+            for (int i = entryName.lastIndexOf('/', entryName.length() - 2); i > 0; i = entryName.lastIndexOf('/', i - 1)) {
+                String parent = entryName.substring(0, i + 1);
+                if (sorted.containsKey(parent)) {
+                    break;
+                }
+                sorted.put(parent, null);
+            }
+        }
+
+        Path staged = AtomicFiles.getStagingFile(new File(blobsDirectory, name).toPath());
+        try {
+            MessageDigest compressed = newDigest();
+            MessageDigest uncompressed = newDigest();
+            OutputStream out = new BufferedOutputStream(new DigestOutputStream(new FileOutputStream(staged.toFile()), compressed), 64 * 1024);
+            try {
+                GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024);
+                TarWriter tar = new TarWriter(new DigestOutputStream(gzip, uncompressed));
+                int directoryMode = groupWritableLayers.contains(name) ? 0775 : 0755;
+                for (Map.Entry<String, ServerLayout.Entry> entry : sorted.entrySet()) {
+                    ServerLayout.Entry file = entry.getValue();
+                    // the directories that contain the installation are left to root
+                    if (entry.getKey().length() < rootPath.length()) {
+                        tar.setOwner(0, 0);
+                        tar.addDirectory(entry.getKey(), 0755);
+                        continue;
+                    }
+                    tar.setOwner(uid, gid);
+                    if (file == null || file.isDirectory()) {
+                        tar.addDirectory(entry.getKey(), directoryMode);
+                    } else {
+                        tar.addFile(entry.getKey(), file.getFile(), (file.getUnixMode() & 0100) != 0 ? 0755 : 0644);
+                    }
+                }
+                tar.finish();
+                gzip.finish();
+            } finally {
+                out.close();
+            }
+            String digest = "sha256:" + toHex(compressed.digest());
+            String diffId = "sha256:" + toHex(uncompressed.digest());
+            long size = Files.size(staged);
+            AtomicFiles.commit(staged, getBlobFile(layoutDirectory, digest).toPath());
+            return new Layer(name, digest, diffId, size);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    private Descriptor writeBlob(String mediaType, String content) throws IOException {
+        byte[] bytes = content.getBytes(UTF_8);
+        String digest = "sha256:" + toHex(newDigest().digest(bytes));
+        AtomicFiles.write(getBlobFile(layoutDirectory, digest).toPath(), bytes);
+        return new Descriptor(mediaType, digest, bytes.length);
+    }
+
+    private static File getBlobFile(File layoutDirectory, String digest) {
+        return new File(layoutDirectory, "blobs/" + digest.replace(':', '/'));
+    }
+
+    /**
+     * Reads the index of a layout, or the blob with the digest.
+     */
+    private static Object readJson(File layoutDirectory, String digest) throws IOException {
+        File file = digest == null ? new File(layoutDirectory, "index.json") : getBlobFile(layoutDirectory, digest);
+        return Json.parse(new String(Files.readAllBytes(file.toPath()), UTF_8));
+    }
+
+    private static List<Map<String, Object>> getObjects(Object object, String name) throws IOException {
+        Object value = toObject(object).get(name);
+        if (!(value instanceof List)) {
+            throw new IOException("Expected an array named " + name + " in an OCI image document");
+        }
+        List<Map<String, Object>> objects = new ArrayList<Map<String, Object>>();
+        for (Object element : (List<?>) value) {
+            objects.add(toObject(element));
+        }
+        return objects;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toObject(Object value) throws IOException {
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected an object in an OCI image document");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static String getDigest(Map<String, Object> descriptor) throws IOException {
+        Object digest = descriptor.get("digest");
+        if (!(digest instanceof String) || !((String) digest).matches("[a-z0-9]+:[a-f0-9]+")) {
+            throw new IOException("Invalid digest " + digest + " in an OCI image document");
+        }
+        return (String) digest;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A layer of the image.
+     */
+    public static class Layer {
+
+        private final String name;
+        private final String digest;
+        private final String diffId;
+        private final long size;
+
+        private Layer(String name, String digest, String diffId, long size) {
+            this.name = name;
+            this.digest = digest;
+            this.diffId = diffId;
+            this.size = size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the digest of the compressed layer.
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        /**
+         * Returns the digest of the uncompressed tar stream.
+         */
+        public String getDiffId() {
+            return diffId;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private static class Descriptor {
+
+        private final String mediaType;
+        private final String digest;
+        private final long size;
+
+        private Descriptor(String mediaType, String digest, long size) {
+            this.mediaType = mediaType;
+            this.digest = digest;
+            this.size = size;
+        }
+
+        private Map<String, Object> toMap(String tag) {
+            Map<String, Object> descriptor = new LinkedHashMap<String, Object>();
+            descriptor.put("mediaType", mediaType);
+            descriptor.put("digest", digest);
+            descriptor.put("size", size);
+            if (tag != null) {
+                descriptor.put("annotations", Collections.singletonMap(REF_NAME, tag));
+            }
+            return descriptor;
+        }
+    }
+}
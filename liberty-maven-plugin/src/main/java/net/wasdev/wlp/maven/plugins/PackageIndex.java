@@ -0,0 +1,114 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Records the size, last modified time and CRC of the files that a package
+ * was created from, so that the next package can copy the compressed data of
+ * the files that did not change from it.
+ * <p>
+ * The index also records the size and last modified time of the package and
+ * the compression level. It is ignored if the package was changed or removed
+ * since, or if a different compression level is requested.
+ */
+public class PackageIndex {
+
+    // entry names start with the install root, so this cannot be an entry
+    private static final String ARCHIVE_KEY = ".archive";
+
+    private final Properties records;
+
+    private final Map<String, ZipCentralDirectory.Entry> entries;
+
+    private PackageIndex(Properties records, Map<String, ZipCentralDirectory.Entry> entries) {
+        this.records = records;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the index of the package, or null if there is no usable index.
+     */
+    public static PackageIndex read(File indexFile, File archive, int level) throws IOException {
+        if (!indexFile.isFile() || !archive.isFile()) {
+            return null;
+        }
+        Properties records = new Properties();
+        InputStream in = new FileInputStream(indexFile);
+        try {
+            records.load(in);
+        } finally {
+            in.close();
+        }
+        if (!getArchiveRecord(archive, level).equals(records.getProperty(ARCHIVE_KEY))) {
+            return null;
+        }
+        Map<String, ZipCentralDirectory.Entry> entries = new HashMap<String, ZipCentralDirectory.Entry>();
+        for (ZipCentralDirectory.Entry entry : ZipCentralDirectory.read(archive).getEntries()) {
+            entries.put(entry.getName(), entry);
+        }
+        return new PackageIndex(records, entries);
+    }
+
+    /**
+     * Returns the entry of the package that holds the unchanged file, or null
+     * if the file is new or changed.
+     */
+    public ZipCentralDirectory.Entry getEntry(String name, ServerLayout.Entry file) {
+        ZipCentralDirectory.Entry entry = entries.get(name);
+        if (entry == null || entry.getSize() != file.getSize()) {
+            return null;
+        }
+        String record = getRecord(file, entry);
+        return record.equals(records.getProperty(name)) ? entry : null;
+    }
+
+    /**
+     * Records the files of a package that was just written.
+     *
+     * @param files the files of the package by entry name
+     */
+    public static void write(File indexFile, File archive, int level, Map<String, ServerLayout.Entry> files) throws IOException {
+        Properties records = new Properties();
+        for (ZipCentralDirectory.Entry entry : ZipCentralDirectory.read(archive).getEntries()) {
+            ServerLayout.Entry file = files.get(entry.getName());
+            if (file != null && !file.isDirectory()) {
+                records.setProperty(entry.getName(), getRecord(file, entry));
+            }
+        }
+        records.setProperty(ARCHIVE_KEY, getArchiveRecord(archive, level));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        records.store(out, "Generated by liberty-maven-plugin");
+        indexFile.getParentFile().mkdirs();
+        AtomicFiles.write(indexFile.toPath(), out.toByteArray());
+    }
+
+    private static String getRecord(ServerLayout.Entry file, ZipCentralDirectory.Entry entry) {
+        return file.getSize() + "|" + file.getLastModified() + "|" + Long.toHexString(entry.getCrc());
+    }
+
+    private static String getArchiveRecord(File archive, int level) {
+        return archive.length() + "|" + archive.lastModified() + "|" + level;
+    }
+}
@@ -0,0 +1,540 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive whose entries are compressed on several threads.
+ * <p>
+ * Each file is read and deflated by a worker thread while the calling thread
+ * writes the finished entries in the order they were added. The number of
+ * entries being compressed at a time is bounded so that memory use does not
+ * grow with the size of the archive. Small files are compressed in memory,
+ * larger files are streamed in chunks into a temporary file next to the
+ * archive. Unix permissions are recorded in the external file attributes, as
+ * the server package command does. Entries of other archives can be copied
+ * without being compressed again.
+ * <p>
+ * Zip64 archives are not written, the archive is limited to 65535 entries
+ * and 4 GB.
+ */
+public class ParallelZipWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int LOCAL_HEADER_LENGTH = 30;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_LENGTH = 22;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int UTF_8_FLAG = 0x0800;
+    private static final int UNIX_HOST = 3;
+    private static final int UNIX_FILE = 0100000;
+    private static final int UNIX_DIRECTORY = 040000;
+    private static final int DOS_DIRECTORY = 0x10;
+    private static final long MAX_VALUE = 0xFFFFFFFFL;
+    private static final long MAX_PENDING_BYTES = 64 * 1024 * 1024;
+    private static final long MAX_IN_MEMORY_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The largest number of entries of an archive.
+     */
+    public static final int MAX_ENTRIES = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final FileChannel channel;
+
+    private final File tempDirectory;
+
+    private final int level;
+
+    private final ExecutorService executor;
+
+    private final int window;
+
+    private final Deque<Future<Entry>> pending = new ArrayDeque<Future<Entry>>();
+
+    private final Deque<Long> pendingSizes = new ArrayDeque<Long>();
+
+    private long pendingBytes;
+
+    private final List<Entry> written = new ArrayList<Entry>();
+
+    private long offset;
+
+    private TimeZone timeZone = TimeZone.getDefault();
+
+    private final Map<File, FileChannel> sources = new HashMap<File, FileChannel>();
+
+    /**
+     * @param archive the file to write, which is replaced if it exists
+     * @param level the compression level from 0 to 9, where 0 stores the entries uncompressed
+     */
+    public ParallelZipWriter(File archive, int level) throws IOException {
+        this(archive, level, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelZipWriter(File archive, int level, int threads) throws IOException {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        this.level = level;
+        threads = Math.max(1, threads);
+        this.window = threads * 4;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.tempDirectory = archive.getAbsoluteFile().getParentFile();
+        this.channel = FileChannel.open(archive.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public void addDirectory(String name, long time, int mode) throws IOException {
+        final Entry entry = new Entry(name.endsWith("/") ? name : name + "/", toDosTime(time, timeZone), UNIX_DIRECTORY | mode);
+        entry.method = STORED;
+        entry.data = new byte[0];
+        add(completed(entry), 0);
+    }
+
+    public void addFile(String name, final File file, long time, int mode) throws IOException {
+        final long length = file.length();
+        if (length > MAX_VALUE) {
+            throw new ZipException("File " + file + " is larger than 4 GB");
+        }
+        final Entry entry = new Entry(name, toDosTime(time, timeZone), UNIX_FILE | mode);
+        add(executor.submit(new Callable<Entry>() {
+            @Override
+            public Entry call() throws IOException {
+                if (length <= MAX_IN_MEMORY_SIZE) {
+                    compress(entry, Files.readAllBytes(file.toPath()));
+                } else {
+                    compress(entry, file);
+                }
+                return entry;
+            }
+        }), Math.min(length, MAX_IN_MEMORY_SIZE));
+    }
+
+    /**
+     * Copies a file entry of another archive without recompressing it.
+     */
+    public void addCopy(String name, File archive, final ZipCentralDirectory.Entry source, long time, int mode) throws IOException {
+        if ((source.getFlags() & 1) != 0) {
+            throw new ZipException("Entry " + source.getName() + " of " + archive + " is encrypted");
+        }
+        final Entry entry = new Entry(name, toDosTime(time, timeZone), UNIX_FILE | mode);
+        entry.method = source.getMethod();
+        entry.crc = source.getCrc();
+        entry.size = source.getSize();
+        entry.compressedSize = source.getCompressedSize();
+        FileChannel in = getSource(archive);
+        entry.source = in;
+        entry.sourceOffset = getDataOffset(in, source);
+        // the data is copied when the entry is written
+        add(completed(entry), 0);
+    }
+
+    /**
+     * Sets the time zone of the entry times, which defaults to the time zone of the JVM.
+     */
+    public void setTimeZone(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Writes the remaining entries and the central directory.
+     */
+    public void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            writeEntry(take());
+        }
+        if (written.size() > MAX_ENTRIES) {
+            throw new ZipException("The archive has more than " + MAX_ENTRIES + " entries");
+        }
+        long start = offset;
+        for (Entry entry : written) {
+            ByteBuffer header = newBuffer(CENTRAL_HEADER_LENGTH + entry.name.length);
+            header.putInt(CENTRAL_HEADER_SIGNATURE);
+            header.putShort((short) (UNIX_HOST << 8 | 20));
+            putCommonFields(header, entry);
+            header.putShort((short) 0); // comment length
+            header.putShort((short) 0); // disk number
+            header.putShort((short) 0); // internal attributes
+            int dosAttributes = (entry.mode & UNIX_DIRECTORY) != 0 ? DOS_DIRECTORY : 0;
+            header.putInt(entry.mode << 16 | dosAttributes);
+            header.putInt((int) entry.offset);
+            header.put(entry.name);
+            header.flip();
+            write(header);
+        }
+        long size = offset - start;
+        if (offset > MAX_VALUE) {
+            throw new ZipException("The archive is larger than 4 GB");
+        }
+        ByteBuffer eocd = newBuffer(EOCD_LENGTH);
+        eocd.putInt(EOCD_SIGNATURE);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) 0);
+        eocd.putShort((short) written.size());
+        eocd.putShort((short) written.size());
+        eocd.putInt((int) size);
+        eocd.putInt((int) start);
+        eocd.putShort((short) 0);
+        eocd.flip();
+        write(eocd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // remove the temporary files of entries that were not written
+        for (Future<Entry> future : pending) {
+            try {
+                Entry entry = future.isDone() && !future.isCancelled() ? future.get() : null;
+                if (entry != null && entry.temporary) {
+                    Files.deleteIfExists(entry.sourceFile);
+                }
+            } catch (ExecutionException e) {
+                // the entry failed before its temporary file was kept
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pending.clear();
+        try {
+            for (FileChannel source : sources.values()) {
+                source.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Converts a Java time to the MS-DOS date and time format used by zip archives.
+     * Times before 1980 are recorded as 1980-01-01 00:00.
+     */
+    public static long toDosTime(long time, TimeZone timeZone) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static Future<Entry> completed(final Entry entry) {
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            @Override
+            public Entry call() {
+                return entry;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    private void add(Future<Entry> future, long size) throws IOException {
+        if (written.size() + pending.size() >= MAX_ENTRIES) {
+            future.cancel(true);
+            throw new ZipException("The archive has more than " + MAX_ENTRIES + " entries");
+        }
+        pending.add(future);
+        pendingSizes.add(size);
+        pendingBytes += size;
+        // write the oldest entries until the window has room again
+        while (pending.size() > window || (pending.size() > 1 && pendingBytes > MAX_PENDING_BYTES)
+                || (!pending.isEmpty() && pending.peek().isDone())) {
+            writeEntry(take());
+        }
+    }
+
+    private Entry take() throws IOException {
+        Future<Entry> future = pending.poll();
+        pendingBytes -= pendingSizes.poll();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compression was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    private FileChannel getSource(File archive) throws IOException {
+        FileChannel source = sources.get(archive);
+        if (source == null) {
+            source = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+            sources.put(archive, source);
+        }
+        return source;
+    }
+
+    private static long getDataOffset(FileChannel in, ZipCentralDirectory.Entry source) throws IOException {
+        ByteBuffer header = newBuffer(LOCAL_HEADER_LENGTH);
+        readFully(in, header, source.getLocalHeaderOffset());
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Local header of entry " + source.getName() + " not found");
+        }
+        long dataOffset = source.getLocalHeaderOffset() + LOCAL_HEADER_LENGTH + (header.getShort(26) & 0xFFFF)
+                + (header.getShort(28) & 0xFFFF);
+        if (dataOffset + source.getCompressedSize() > in.size()) {
+            throw new EOFException("Unexpected end of zip archive");
+        }
+        return dataOffset;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip archive");
+            }
+        }
+    }
+
+    private void compress(Entry entry, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.crc = crc.getValue();
+        entry.size = content.length;
+        if (level != Deflater.NO_COMPRESSION) {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    out.write(buffer, 0, count);
+                }
+                // keep entries that do not compress, e.g. nested archives, as they are
+                if (out.size() < content.length) {
+                    entry.method = DEFLATED;
+                    entry.data = out.toByteArray();
+                    entry.compressedSize = entry.data.length;
+                    return;
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        entry.method = STORED;
+        entry.data = content;
+        entry.compressedSize = content.length;
+    }
+
+    /**
+     * Compresses a large file in chunks into a temporary file, or records the
+     * file itself as the data if it does not compress.
+     */
+    private void compress(Entry entry, File file) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Path temp = null;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                OutputStream out = null;
+                Deflater deflater = null;
+                if (level != Deflater.NO_COMPRESSION) {
+                    temp = Files.createTempFile(tempDirectory.toPath(), "." + file.getName() + ".", ".tmp");
+                    deflater = new Deflater(level, true);
+                    out = new DeflaterOutputStream(new FileOutputStream(temp.toFile()), deflater, BUFFER_SIZE);
+                }
+                try {
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        crc.update(buffer, 0, count);
+                        size += count;
+                        if (out != null) {
+                            out.write(buffer, 0, count);
+                        }
+                    }
+                } finally {
+                    if (out != null) {
+                        out.close();
+                        deflater.end();
+                    }
+                }
+            } finally {
+                in.close();
+            }
+            if (size > MAX_VALUE) {
+                throw new ZipException("File " + file + " is larger than 4 GB");
+            }
+            entry.crc = crc.getValue();
+            entry.size = size;
+            if (temp != null && Files.size(temp) < size) {
+                entry.method = DEFLATED;
+                entry.compressedSize = Files.size(temp);
+                entry.sourceFile = temp;
+                entry.temporary = true;
+                temp = null;
+            } else {
+                // keep entries that do not compress, e.g. nested archives, as they are
+                entry.method = STORED;
+                entry.compressedSize = size;
+                entry.sourceFile = file.toPath();
+            }
+        } finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    private void writeEntry(Entry entry) throws IOException {
+        if (offset > MAX_VALUE || entry.size > MAX_VALUE) {
+            throw new ZipException("The archive is larger than 4 GB");
+        }
+        entry.offset = offset;
+        ByteBuffer header = newBuffer(LOCAL_HEADER_LENGTH + entry.name.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE);
+        putCommonFields(header, entry);
+        header.put(entry.name);
+        header.flip();
+        write(header);
+        if (entry.data != null) {
+            write(ByteBuffer.wrap(entry.data));
+        } else if (entry.source != null) {
+            transfer(entry.source, entry.sourceOffset, entry.compressedSize);
+        } else {
+            FileChannel in = FileChannel.open(entry.sourceFile, StandardOpenOption.READ);
+            try {
+                transfer(in, 0, entry.compressedSize);
+            } finally {
+                in.close();
+                if (entry.temporary) {
+                    Files.deleteIfExists(entry.sourceFile);
+                }
+            }
+        }
+        // only the central directory fields are kept
+        entry.data = null;
+        entry.source = null;
+        entry.sourceFile = null;
+        written.add(entry);
+    }
+
+    private void transfer(FileChannel in, long position, long count) throws IOException {
+        long end = position + count;
+        while (position < end) {
+            long transferred = in.transferTo(position, end - position, channel);
+            if (transferred <= 0 && position >= in.size()) {
+                throw new EOFException("A file changed while it was written to the archive");
+            }
+            position += transferred;
+            offset += transferred;
+        }
+    }
+
+    private static void putCommonFields(ByteBuffer header, Entry entry) {
+        header.putShort((short) (entry.method == DEFLATED ? 20 : 10));
+        header.putShort((short) UTF_8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt((int) entry.dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt((int) entry.compressedSize);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0); // extra field length
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer newBuffer(int length) {
+        return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static class Entry {
+
+        private final byte[] name;
+        private final long dosTime;
+        private final int mode;
+        private int method;
+        private long crc;
+        private long size;
+        private long compressedSize;
+        private long offset;
+        // the data is in memory, in a region of another archive or in a file
+        private byte[] data;
+        private FileChannel source;
+        private long sourceOffset;
+        private Path sourceFile;
+        private boolean temporary;
+
+        private Entry(String name, long dosTime, int mode) {
+            this.name = name.getBytes(UTF_8);
+            this.dosTime = dosTime;
+            this.mode = mode;
+        }
+    }
+}
@@ -19,244 +19,644 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
-
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
 
+/**
+ * Application locations, features, variables and the default HTTP endpoint
+ * configured in a server.xml, its includes and the configDropins files.
+ * <p>
+ * Instances are immutable and cached per server.xml. Every local file that was
+ * read, or looked for, is recorded with its size and last modified time, and a
+ * cached instance is rebuilt once any of them changes. The parse results of
+ * the individual files are cached as well, so a rebuild only parses the files
+ * that actually changed. Remote includes are recorded as well and revalidated
+ * with their ETag and Last-Modified headers; a remote include without them is
+ * read again every time. Includes that cannot be read are skipped and
+ * reported by {@link #getUnreadableIncludes()}.
+ */
 public class ServerConfigDocument {
-    
-    private static ServerConfigDocument instance;
-    
-    private static DocumentBuilder docBuilder;
-    
-    private static File configDirectory;
-    private static File serverFile;
-    
-    private static Set<String> locations;
-    
+
+    private static final Set<String> APPLICATION_ELEMENTS = new HashSet<String>(
+            Arrays.asList("application", "webApplication", "enterpriseApplication"));
+
+    private static final ConcurrentMap<String, ServerConfigDocument> instances = new ConcurrentHashMap<String, ServerConfigDocument>();
+
+    private static final ConcurrentMap<File, ParsedFile> parsedFiles = new ConcurrentHashMap<File, ParsedFile>();
+
+    private static final ConcurrentMap<String, RemoteInclude> remoteIncludes = new ConcurrentHashMap<String, RemoteInclude>();
+
+    // the defaults dropins are overridden by the server.xml, which is overridden by the overrides dropins
+    private static final int DEFAULTS_PRECEDENCE = 0;
+    private static final int SERVER_PRECEDENCE = 1;
+    private static final int OVERRIDES_PRECEDENCE = 2;
+
+    private static final String DEFAULT_HTTP_ENDPOINT = "defaultHttpEndpoint";
+
+    private final File configDirectory;
+    private final File serverFile;
+
+    private final Set<String> locations = new HashSet<String>();
+
+    private final Set<String> features = new TreeSet<String>();
+
+    private final Map<String, String> variables = new HashMap<String, String>();
+
+    private final Map<String, String> variableDefaults = new HashMap<String, String>();
+
+    private String[] httpEndpoint;
+
+    private final Map<File, FileStamp> dependencies = new HashMap<File, FileStamp>();
+
+    // remote includes with the validators they were read with, or null if they have none
+    private final Map<String, RemoteInclude> remoteDependencies = new HashMap<String, RemoteInclude>();
+
+    private final Map<String, String> unreadableIncludes = new TreeMap<String, String>();
+
     public Set<String> getLocations() {
-        return locations;
+        return Collections.unmodifiableSet(locations);
+    }
+
+    /**
+     * Returns the configured features in lower case, sorted by name.
+     */
+    public Set<String> getFeatures() {
+        return Collections.unmodifiableSet(features);
+    }
+
+    /**
+     * Returns the values of the <code>variable</code> elements by name.
+     */
+    public Map<String, String> getVariables() {
+        return Collections.unmodifiableMap(variables);
+    }
+
+    /**
+     * Returns the default values of the <code>variable</code> elements by name.
+     */
+    public Map<String, String> getVariableDefaults() {
+        return Collections.unmodifiableMap(variableDefaults);
     }
-    
-    private static File getServerFile() {
+
+    /**
+     * Returns the <code>host</code> and <code>httpPort</code> attributes of the
+     * <code>httpEndpoint</code> with the id <code>defaultHttpEndpoint</code>, or
+     * of the first one if none has that id, or null if there is no
+     * <code>httpEndpoint</code>. Attributes that are not set are null and
+     * variables in them are not resolved.
+     */
+    public String[] getHttpEndpoint() {
+        return httpEndpoint == null ? null : httpEndpoint.clone();
+    }
+
+    /**
+     * Returns the error message of every include that could not be read, by
+     * location. The rest of the configuration is read without them.
+     */
+    public Map<String, String> getUnreadableIncludes() {
+        return Collections.unmodifiableMap(unreadableIncludes);
+    }
+
+    private File getServerFile() {
         return serverFile;
     }
-    
-    public ServerConfigDocument(File serverXML, File configDir) {
-        initializeAppsLocation(serverXML, configDir);
+
+    public ServerConfigDocument(File serverXML, File configDir) throws Exception {
+        serverFile = serverXML;
+        configDirectory = configDir;
+        initializeAppsLocation();
     }
-    
-    private static DocumentBuilder getDocumentBuilder() throws Exception {
-        if (docBuilder == null) {
-            // get input XML Document 
-            DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-            docBuilderFactory.setIgnoringComments(true);
-            docBuilderFactory.setCoalescing(true);
-            docBuilderFactory.setIgnoringElementContentWhitespace(true);
-            docBuilderFactory.setValidating(false);
-            docBuilder = docBuilderFactory.newDocumentBuilder();
-        }
-        return docBuilder;
+
+    private static ExecutorService createExecutor() {
+        int threads = Math.min(8, Runtime.getRuntime().availableProcessors());
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "server-config-reader");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
-    
-    public static ServerConfigDocument getInstance(File serverXML, File configDir) throws IOException {
-        // Initialize if instance is not created yet, or source server xml file location has been changed.
-        if (instance == null || !serverXML.getCanonicalPath().equals(getServerFile().getCanonicalPath())) {
-           instance = new ServerConfigDocument(serverXML, configDir);
+
+    /**
+     * Returns the cached document of the server.xml, building it if needed. A
+     * document that fails to build is not cached, so the next call reads the
+     * configuration again.
+     */
+    public static ServerConfigDocument getInstance(File serverXML, File configDir) throws Exception {
+        String key = serverXML.getCanonicalPath() + File.pathSeparator + (configDir == null ? "" : configDir.getCanonicalPath());
+        ServerConfigDocument instance = instances.get(key);
+        // Initialize if instance is not created yet, or any of the files it was built from has changed.
+        if (instance == null || instance.isStale()) {
+            instance = new ServerConfigDocument(serverXML, configDir);
+            instances.put(key, instance);
         }
         return instance;
-     }
-     
-    private static void initializeAppsLocation(File serverXML, File configDir) {
+    }
+
+    private boolean isStale() {
+        for (Map.Entry<File, FileStamp> dependency : dependencies.entrySet()) {
+            if (!dependency.getValue().equals(new FileStamp(dependency.getKey()))) {
+                return true;
+            }
+        }
+        for (Map.Entry<String, RemoteInclude> dependency : remoteDependencies.entrySet()) {
+            if (dependency.getValue() == null || isModified(dependency.getKey(), dependency.getValue())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Revalidates a remote include with its ETag and Last-Modified headers.
+     * An include that cannot be revalidated is considered modified.
+     */
+    private static boolean isModified(String location, RemoteInclude include) {
         try {
-            serverFile = serverXML;
-            configDirectory = configDir;
-            
-            locations = new HashSet<String>();
-            
-            Document doc = parseDocument(new FileInputStream(serverFile));
-            
-            parseApplication(doc, "/server/application");
-            parseApplication(doc, "/server/webApplication");
-            parseApplication(doc, "/server/enterpriseApplication");
-            parseInclude(doc, "/server/include");
-            parseConfigDropinsDir();
-
-        } catch (Exception e) {
-            e.printStackTrace();
+            URLConnection connection = new URL(location).openConnection();
+            if (!(connection instanceof HttpURLConnection)) {
+                return true;
+            }
+            try {
+                setValidators(connection, include);
+                return ((HttpURLConnection) connection).getResponseCode() != HttpURLConnection.HTTP_NOT_MODIFIED;
+            } finally {
+                ((HttpURLConnection) connection).disconnect();
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static void setValidators(URLConnection connection, RemoteInclude include) {
+        if (include.etag != null) {
+            connection.setRequestProperty("If-None-Match", include.etag);
+        }
+        if (include.lastModified != 0) {
+            connection.setIfModifiedSince(include.lastModified);
         }
     }
-    
-    private static void parseApplication(Document doc, String expression) throws Exception {
-        // parse input document
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(doc, XPathConstants.NODESET);
-        
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            String nodeValue = nodeList.item(i).getAttributes().getNamedItem("location").getNodeValue();
-            
-            // add unique values only
-            if (!nodeValue.isEmpty() && !locations.contains(nodeValue)) {
-                locations.add(nodeValue);
+
+    private void initializeAppsLocation() throws Exception {
+        List<Object> sources = new ArrayList<Object>();
+        Map<String, Integer> precedence = new HashMap<String, Integer>();
+        File server = getServerFile().getCanonicalFile();
+        sources.add(server);
+        precedence.put(server.toString(), SERVER_PRECEDENCE);
+        addConfigDropins(sources, precedence);
+        parseIncludeGraph(sources, precedence);
+    }
+
+    /**
+     * Walks the include graph level by level. The configuration files of a level
+     * are read concurrently, and every location is only read once, so include
+     * cycles terminate. Included files have the precedence of the file that
+     * includes them. An include that cannot be read is recorded and skipped, as
+     * the server does, while the roots must be readable.
+     */
+    private void parseIncludeGraph(List<Object> roots, Map<String, Integer> precedence) throws Exception {
+        Map<String, Integer> variableRanks = new HashMap<String, Integer>();
+        Map<String, Integer> defaultRanks = new HashMap<String, Integer>();
+        int[] endpointRanks = null;
+        String[] firstEndpoint = null;
+        Set<String> visited = new HashSet<String>();
+        List<Object> level = roots;
+        ExecutorService executor = null;
+        try {
+            while (!level.isEmpty()) {
+                List<Object> unvisited = new ArrayList<Object>();
+                for (Object source : level) {
+                    if (visited.add(source.toString())) {
+                        unvisited.add(source);
+                        if (source instanceof File) {
+                            // recorded before the file is read, so a change during the read is not missed
+                            dependencies.put((File) source, new FileStamp((File) source));
+                        }
+                    }
+                }
+
+                List<Future<ParsedFile>> futures = new ArrayList<Future<ParsedFile>>();
+                if (unvisited.size() > 1) {
+                    if (executor == null) {
+                        executor = createExecutor();
+                    }
+                    for (final Object source : unvisited) {
+                        futures.add(executor.submit(new Callable<ParsedFile>() {
+                            @Override
+                            public ParsedFile call() throws Exception {
+                                return parseSource(source);
+                            }
+                        }));
+                    }
+                }
+
+                List<Object> next = new ArrayList<Object>();
+                for (int i = 0; i < unvisited.size(); i++) {
+                    Object source = unvisited.get(i);
+                    ParsedFile parsed;
+                    try {
+                        parsed = futures.isEmpty() ? parseSource(source) : getResult(futures.get(i));
+                    } catch (Exception e) {
+                        if (source instanceof URL) {
+                            // read again on the next call, the include may be available then
+                            remoteDependencies.put(source.toString(), null);
+                        }
+                        if (level == roots) {
+                            throw e;
+                        }
+                        unreadableIncludes.put(source.toString(), String.valueOf(e.getLocalizedMessage()));
+                        continue;
+                    }
+                    if (source instanceof URL) {
+                        remoteDependencies.put(source.toString(), remoteIncludes.get(source.toString()));
+                    }
+                    int rank = precedence.get(source.toString());
+                    // add unique values only
+                    locations.addAll(parsed.locations);
+                    features.addAll(parsed.features);
+                    merge(variables, variableRanks, parsed.variables, rank);
+                    merge(variableDefaults, defaultRanks, parsed.variableDefaults, rank);
+                    for (String[] endpoint : parsed.httpEndpoints) {
+                        if (DEFAULT_HTTP_ENDPOINT.equals(endpoint[0])) {
+                            if (endpointRanks == null) {
+                                httpEndpoint = new String[2];
+                                endpointRanks = new int[] { -1, -1 };
+                            }
+                            for (int j = 0; j < 2; j++) {
+                                if (endpoint[j + 1] != null && rank >= endpointRanks[j]) {
+                                    httpEndpoint[j] = endpoint[j + 1];
+                                    endpointRanks[j] = rank;
+                                }
+                            }
+                        } else if (firstEndpoint == null) {
+                            firstEndpoint = new String[] { endpoint[1], endpoint[2] };
+                        }
+                    }
+                    for (String include : parsed.includes) {
+                        Object resolved = resolveInclude(include);
+                        if (resolved != null) {
+                            next.add(resolved);
+                            if (!precedence.containsKey(resolved.toString())) {
+                                precedence.put(resolved.toString(), rank);
+                            }
+                        }
+                    }
+                }
+                level = next;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        if (httpEndpoint == null) {
+            httpEndpoint = firstEndpoint;
+        }
+    }
+
+    /**
+     * Returns the result of a read, throwing what the read threw.
+     */
+    private static ParsedFile getResult(Future<ParsedFile> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Adds the values that are not already set by a file of higher precedence.
+     */
+    private static void merge(Map<String, String> values, Map<String, Integer> ranks, Map<String, String> parsed, int rank) {
+        for (Map.Entry<String, String> value : parsed.entrySet()) {
+            Integer current = ranks.get(value.getKey());
+            if (current == null || rank >= current) {
+                values.put(value.getKey(), value.getValue());
+                ranks.put(value.getKey(), rank);
             }
         }
     }
-   
-    private static void parseInclude(Document doc, String expression) throws Exception {
-        // parse include document in source server xml
-        XPath xPath = XPathFactory.newInstance().newXPath();
-        NodeList nodeList = (NodeList) xPath.compile(expression).evaluate(doc, XPathConstants.NODESET);
-       
-        for (int i = 0; i < nodeList.getLength(); i++) {
-            String nodeValue = nodeList.item(i).getAttributes().getNamedItem("location").getNodeValue();
-            
-            if (!nodeValue.isEmpty()) {
-                Document docIncl = getIncludeDoc(nodeValue);
-                
-                if (docIncl != null) {
-                    parseApplication(docIncl, "/server/application");
-                    parseApplication(docIncl, "/server/webApplication");
-                    parseApplication(docIncl, "/server/enterpriseApplication");
-                    // handle nested include elements
-                    parseInclude(docIncl, "/server/include");
+
+    private static ParsedFile parseSource(Object source) throws Exception {
+        if (source instanceof File) {
+            return parseFile((File) source);
+        }
+        return parseRemote((URL) source);
+    }
+
+    private static ParsedFile parseFile(File canonicalFile) throws Exception {
+        FileStamp stamp = new FileStamp(canonicalFile);
+        ParsedFile parsed = parsedFiles.get(canonicalFile);
+        if (parsed == null || !parsed.stamp.equals(stamp)) {
+            InputStream inputStream = new FileInputStream(canonicalFile);
+            parsed = parseDocument(stamp, inputStream);
+            parsedFiles.put(canonicalFile, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Reads a remote include, revalidating a previously read copy with its
+     * ETag and Last-Modified headers.
+     */
+    private static ParsedFile parseRemote(URL url) throws Exception {
+        RemoteInclude cached = remoteIncludes.get(url.toString());
+        URLConnection connection = url.openConnection();
+        try {
+            if (cached != null && connection instanceof HttpURLConnection) {
+                setValidators(connection, cached);
+                if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    return cached.parsed;
                 }
             }
+            ParsedFile parsed = parseDocument(null, connection.getInputStream());
+            if (connection.getHeaderField("ETag") != null || connection.getLastModified() != 0) {
+                remoteIncludes.put(url.toString(),
+                        new RemoteInclude(connection.getHeaderField("ETag"), connection.getLastModified(), parsed));
+            } else {
+                remoteIncludes.remove(url.toString());
+            }
+            return parsed;
+        } finally {
+            if (connection instanceof HttpURLConnection) {
+                ((HttpURLConnection) connection).disconnect();
+            }
         }
     }
-    
-    private static void parseConfigDropinsDir() throws Exception {
+
+    /**
+     * Returns the canonical file or the URL an include refers to, or null if it
+     * cannot be read. Local files that are looked for are recorded as dependencies.
+     */
+    private Object resolveInclude(String loc) throws Exception {
+        File locFile = null;
+
+        if (loc.startsWith("http:") || loc.startsWith("https:")) {
+            if (isValidURL(loc)) {
+                return new URL(new URI(loc).normalize().toString());
+            }
+        }
+        else if (loc.startsWith("file:")) {
+            if (isValidURL(loc)) {
+                return resolveIfExists(new File(new URI(loc)));
+            }
+        }
+        else if (loc.startsWith("ftp:")) {
+            // TODO handle ftp protocol
+        }
+        else {
+            locFile = new File(loc);
+
+            // check if absolute file
+            if (locFile.isAbsolute()) {
+                return resolveIfExists(locFile);
+            }
+            else {
+                // check configDirectory first if exists
+                if (configDirectory != null && configDirectory.exists()) {
+                    locFile = new File(configDirectory, loc);
+                    if (locFile.exists()) {
+                        return locFile.getCanonicalFile();
+                    }
+                    // the include may be added here later
+                    dependencies.put(locFile.getCanonicalFile(), new FileStamp(locFile));
+                }
+
+                return resolveIfExists(new File(getServerFile().getParentFile(), loc));
+            }
+        }
+        return null;
+    }
+
+    private File resolveIfExists(File file) throws IOException {
+        if (file.exists()) {
+            return file.getCanonicalFile();
+        }
+        // record the missing file so the document is rebuilt once it is created
+        dependencies.put(file.getCanonicalFile(), new FileStamp(file));
+        return null;
+    }
+
+    private void addConfigDropins(List<Object> sources, Map<String, Integer> precedence) throws Exception {
         File configDropins = null;
-        
-        // if configDirectory exists and contains configDropins directory, 
+
+        // if configDirectory exists and contains configDropins directory,
         // its configDropins has higher precedence.
         if (configDirectory != null && configDirectory.exists()) {
             configDropins = new File(configDirectory, "configDropins");
+            trackDirectory(configDropins);
         }
-        
+
         if (configDropins == null || !configDropins.exists()) {
             configDropins = new File(getServerFile().getParent(), "configDropins");
+            trackDirectory(configDropins);
         }
-        
+
         if (configDropins != null && configDropins.exists()) {
             File overrides = new File(configDropins, "overrides");
-            
+            trackDirectory(overrides);
+
             if (overrides.exists()) {
                 File[] cfgFiles = overrides.listFiles();
-                
+
                 for (int i = 0; i < cfgFiles.length; i++) {
                     if (cfgFiles[i].isFile()) {
-                        parseDropinsFiles(cfgFiles[i]);
+                        sources.add(cfgFiles[i].getCanonicalFile());
+                        precedence.put(cfgFiles[i].getCanonicalPath(), OVERRIDES_PRECEDENCE);
                     }
                 }
             }
-            
+
             File defaults = new File(configDropins, "defaults");
+            trackDirectory(defaults);
             if (defaults.exists()) {
                 File[] cfgFiles = defaults.listFiles();
-                
+
                 for (int i = 0; i < cfgFiles.length; i++) {
                     if (cfgFiles[i].isFile()) {
-                        parseDropinsFiles(cfgFiles[i]);
+                        sources.add(cfgFiles[i].getCanonicalFile());
+                        precedence.put(cfgFiles[i].getCanonicalPath(), DEFAULTS_PRECEDENCE);
                     }
                 }
             }
         }
     }
-    
-    private static void parseDropinsFiles(File file) throws Exception {
-        // get input XML Document 
-        Document doc = parseDocument(new FileInputStream(file));
-        
-        parseApplication(doc, "/server/application");
-        parseApplication(doc, "/server/webApplication");
-        parseApplication(doc, "/server/enterpriseApplication");
-        parseInclude(doc, "/server/include");
-    }
-    
-    private static Document getIncludeDoc(String loc) throws Exception {
-    
-        Document doc = null;
-        File locFile = null;
-        
-        if (loc.startsWith("http:") || loc.startsWith("https:")) {
-            if (isValidURL(loc)) {
-                URL url = new URL(loc);
-                URLConnection connection = url.openConnection();
-                doc = parseDocument(connection.getInputStream());
-            }
-        }
-        else if (loc.startsWith("file:")) {
-           if (isValidURL(loc)) {
-               locFile = new File(loc);
-               if (locFile.exists()) {
-                   InputStream inputStream = new FileInputStream(locFile.getCanonicalPath());
-                   doc = parseDocument(inputStream);    
-               }
-           }
-       }
-       else if (loc.startsWith("ftp:")) {
-           // TODO handle ftp protocol
-       }
-       else {
-           locFile = new File(loc);
-           
-           // check if absolute file
-           if (locFile.isAbsolute()) {
-               InputStream inputStream = new FileInputStream(locFile.getCanonicalPath());
-               doc = parseDocument(inputStream);    
-           }
-           else {
-               // check configDirectory first if exists
-               if (configDirectory != null && configDirectory.exists()) {
-                   locFile = new File(configDirectory, loc);
-               }               
-               
-               if (locFile == null || !locFile.exists()) {
-                   locFile = new File(getServerFile().getParentFile(), loc);
-               }
-               
-               if (locFile != null && locFile.exists()) {
-                   InputStream inputStream = new FileInputStream(locFile.getCanonicalPath());
-                   doc = parseDocument(inputStream);    
-               }
-           }
-        }
-        return doc;
+
+    // a directory's last modified time changes when files are added to or removed from it
+    private void trackDirectory(File dir) throws IOException {
+        dependencies.put(dir.getCanonicalFile(), new FileStamp(dir));
     }
-    
-    private static Document parseDocument(InputStream ins) throws Exception {
-        Document doc = null;
+
+    /**
+     * Collects the location of the application, webApplication, enterpriseApplication
+     * and include elements, the features of the featureManager elements, the
+     * variable elements and the httpEndpoint elements of the server element in a
+     * single streaming pass.
+     */
+    private static ParsedFile parseDocument(FileStamp stamp, InputStream ins) throws Exception {
+        ParsedFile parsed = new ParsedFile(stamp);
         try {
-            doc = getDocumentBuilder().parse(ins);
-        } catch (Exception e) {
-            throw e;
+            XMLStreamReader reader = XmlFactories.getInputFactory().createXMLStreamReader(ins);
+            try {
+                int depth = 0;
+                boolean server = false;
+                boolean featureManager = false;
+                while (reader.hasNext()) {
+                    int event = reader.next();
+                    if (event == XMLStreamConstants.START_ELEMENT) {
+                        depth++;
+                        String name = reader.getLocalName();
+                        if (depth == 1) {
+                            server = "server".equals(name);
+                        } else if (depth == 3 && featureManager && "feature".equals(name)) {
+                            String feature = reader.getElementText().trim();
+                            if (!feature.isEmpty()) {
+                                parsed.features.add(feature.toLowerCase());
+                            }
+                            // getElementText() consumed the end element
+                            depth--;
+                        } else if (depth == 2 && server) {
+                            featureManager = "featureManager".equals(name);
+                            String location = reader.getAttributeValue(null, "location");
+                            if ("variable".equals(name)) {
+                                String variable = reader.getAttributeValue(null, "name");
+                                if (variable != null) {
+                                    putIfNotNull(parsed.variables, variable, reader.getAttributeValue(null, "value"));
+                                    putIfNotNull(parsed.variableDefaults, variable, reader.getAttributeValue(null, "defaultValue"));
+                                }
+                            } else if ("httpEndpoint".equals(name)) {
+                                parsed.httpEndpoints.add(new String[] { reader.getAttributeValue(null, "id"),
+                                        reader.getAttributeValue(null, "host"), reader.getAttributeValue(null, "httpPort") });
+                            }
+                            if (location != null && !location.isEmpty()) {
+                                if ("include".equals(name)) {
+                                    parsed.includes.add(location);
+                                } else if (APPLICATION_ELEMENTS.contains(name)) {
+                                    parsed.locations.add(location);
+                                }
+                            }
+                        }
+                    } else if (event == XMLStreamConstants.END_ELEMENT) {
+                        depth--;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
         } finally {
             if (ins != null) {
                 ins.close();
             }
         }
-        return doc;
+        return parsed;
+    }
+
+    private static void putIfNotNull(Map<String, String> map, String key, String value) {
+        if (value != null) {
+            map.put(key, value);
+        }
     }
-    
+
     private static boolean isValidURL(String url) {
         try {
             URL testURL = new URL(url);
             testURL.toURI();
             return true;
-        } 
+        }
         catch (Exception exception) {
             return false;
         }
     }
+
+    /**
+     * Size and last modified time of a file, or of a file that does not exist.
+     */
+    private static class FileStamp {
+        private final long lastModified;
+        private final long length;
+
+        FileStamp(File file) {
+            lastModified = file.lastModified();
+            length = file.isFile() ? file.length() : -1;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lastModified ^ length);
+        }
+    }
+
+    /**
+     * A remote include along with the validators needed to revalidate it.
+     */
+    private static class RemoteInclude {
+        private final String etag;
+        private final long lastModified;
+        private final ParsedFile parsed;
+
+        RemoteInclude(String etag, long lastModified, ParsedFile parsed) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.parsed = parsed;
+        }
+    }
+
+    /**
+     * Application locations, includes and features found in a single configuration file.
+     */
+    private static class ParsedFile {
+        private final FileStamp stamp;
+        private final List<String> locations = new ArrayList<String>();
+        private final List<String> includes = new ArrayList<String>();
+        private final List<String> features = new ArrayList<String>();
+        private final Map<String, String> variables = new HashMap<String, String>();
+        private final Map<String, String> variableDefaults = new HashMap<String, String>();
+        // id, host and httpPort
+        private final List<String[]> httpEndpoints = new ArrayList<String[]>();
+
+        ParsedFile(FileStamp stamp) {
+            this.stamp = stamp;
+        }
+    }
 }
- 
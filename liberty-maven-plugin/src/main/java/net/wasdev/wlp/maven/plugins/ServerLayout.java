@@ -0,0 +1,232 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The files of a server as they are laid out in a packaged server.
+ * <p>
+ * Entry names are relative to the <code>wlp</code> directory of the package.
+ * The user directory is always packaged as <code>usr</code> and contains only
+ * the shared resources, the extensions and the packaged server. The logs and
+ * the work area of the server are left out.
+ */
+public class ServerLayout {
+
+    /**
+     * Name of the directory that contains the server in a package.
+     */
+    public static final String ROOT = "wlp";
+
+    private static final String USR = "usr";
+
+    private final File installDirectory;
+
+    private final File userDirectory;
+
+    private final String serverName;
+
+    private final Set<Path> excludes = new HashSet<Path>();
+
+    /**
+     * @param outputDirectory the output directory of the servers (<tt>WLP_OUTPUT_DIR</tt>)
+     */
+    public ServerLayout(File installDirectory, File userDirectory, String serverName, File outputDirectory) throws IOException {
+        this.installDirectory = installDirectory.getCanonicalFile();
+        this.userDirectory = userDirectory.getCanonicalFile();
+        this.serverName = serverName;
+
+        File serverDirectory = new File(this.userDirectory, "servers/" + serverName);
+        File serverOutputDirectory = new File(outputDirectory, serverName);
+        exclude(new File(this.installDirectory, USR));
+        exclude(new File(this.installDirectory, ".installed"));
+        exclude(new File(serverDirectory, "logs"));
+        exclude(new File(serverDirectory, "workarea"));
+        exclude(new File(serverOutputDirectory, "logs"));
+        exclude(new File(serverOutputDirectory, "workarea"));
+        exclude(new File(serverOutputDirectory, "apps/expanded"));
+    }
+
+    /**
+     * Leaves a file or directory out of the layout, e.g. the package itself.
+     */
+    public void exclude(File file) throws IOException {
+        excludes.add(file.getCanonicalFile().toPath());
+    }
+
+    /**
+     * Returns true if the package type can be laid out, i.e. it is one of
+     * <code>all</code>, <code>usr</code> or <code>wlp</code>. Minified and
+     * runnable packages are only created by the server package command.
+     */
+    public static boolean isSupported(String include) {
+        return include == null || "all".equals(include) || "usr".equals(include) || "wlp".equals(include);
+    }
+
+    /**
+     * Returns the entries of the package type, sorted by name.
+     */
+    public List<Entry> getEntries(String include) throws IOException {
+        if (!isSupported(include)) {
+            throw new IllegalArgumentException("Unsupported package type " + include);
+        }
+        List<Entry> entries = new ArrayList<Entry>();
+        if (!"usr".equals(include)) {
+            walk(installDirectory, "", entries);
+        }
+        if (!"wlp".equals(include)) {
+            addDirectory(userDirectory, USR + "/", entries);
+            walk(new File(userDirectory, "shared"), USR + "/shared/", entries);
+            walk(new File(userDirectory, "extension"), USR + "/extension/", entries);
+            File servers = new File(userDirectory, "servers");
+            addDirectory(servers, USR + "/servers/", entries);
+            walk(new File(servers, serverName), USR + "/servers/" + serverName + "/", entries);
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    private void walk(File dir, final String prefix, final List<Entry> entries) throws IOException {
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final Path root = dir.getCanonicalFile().toPath();
+        Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException {
+                if (excludes.contains(path) || path.equals(userDirectory.toPath())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!path.equals(root) || !prefix.isEmpty()) {
+                    entries.add(new Entry(getName(path) + "/", path.toFile(), attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && !excludes.contains(path)) {
+                    entries.add(new Entry(getName(path), path.toFile(), attrs));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String getName(Path path) {
+                String relative = root.relativize(path).toString().replace(File.separatorChar, '/');
+                if (relative.isEmpty()) {
+                    return prefix.substring(0, prefix.length() - 1);
+                }
+                return prefix + relative;
+            }
+        });
+    }
+
+    private void addDirectory(File dir, String name, List<Entry> entries) throws IOException {
+        if (dir.isDirectory()) {
+            entries.add(new Entry(name, dir, Files.readAttributes(dir.toPath(), BasicFileAttributes.class)));
+        }
+    }
+
+    /**
+     * A file or directory of the layout. Directory names end with a slash.
+     */
+    public static class Entry implements Comparable<Entry> {
+
+        private final String name;
+        private final File file;
+        private final long size;
+        private final long lastModified;
+
+        private Entry(String name, File file, BasicFileAttributes attrs) {
+            this.name = name;
+            this.file = file;
+            this.size = attrs.isDirectory() ? 0 : attrs.size();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Returns the Unix permission bits of the file. File systems without
+         * POSIX permissions report 0755 for directories and executable files
+         * and 0644 for other files.
+         */
+        public int getUnixMode() throws IOException {
+            Path path = file.toPath();
+            if (Files.getFileStore(path).supportsFileAttributeView("posix")) {
+                int mode = 0;
+                PosixFilePermission[] values = PosixFilePermission.values();
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+                // PosixFilePermission is declared from OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+                for (int i = 0; i < values.length; i++) {
+                    if (permissions.contains(values[i])) {
+                        mode |= 0400 >> i;
+                    }
+                }
+                return mode;
+            }
+            return isDirectory() || file.canExecute() ? 0755 : 0644;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return name.compareTo(other.name);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && name.equals(((Entry) obj).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+}
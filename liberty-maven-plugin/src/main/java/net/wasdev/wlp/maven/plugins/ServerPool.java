@@ -0,0 +1,255 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.wasdev.wlp.ant.ServerTask;
+
+/**
+ * Servers that are kept running between the modules of a build.
+ * <p>
+ * A pooled server is registered under its install directory, user directory
+ * and server name together with the features it was started with. It is
+ * reused by a later module of the same build as long as all of them match.
+ * Pooled servers that cannot be reused are stopped before another server is
+ * started, since they hold on to their ports, and all pooled servers are
+ * stopped when the Maven session ends.
+ */
+public class ServerPool {
+
+    private static final Map<String, Server> servers = new HashMap<String, Server>();
+
+    // the sessions whose end stops the pooled servers, compared by identity
+    private static final List<Object> sessions = new ArrayList<Object>();
+
+    private ServerPool() {
+    }
+
+    /**
+     * A running pooled server.
+     */
+    public static class Server {
+        private final String name;
+        private final Set<String> features;
+        private final ServerTask stopTask;
+        private long logOffset;
+        private boolean inUse = true;
+
+        Server(String name, Set<String> features, ServerTask stopTask) {
+            this.name = name;
+            this.features = features;
+            this.stopTask = stopTask;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the length of the server log when the server was last reset.
+         */
+        public synchronized long getLogOffset() {
+            return logOffset;
+        }
+
+        public synchronized void setLogOffset(long logOffset) {
+            this.logOffset = logOffset;
+        }
+
+        void stop() {
+            try {
+                stopTask.execute();
+            } catch (Exception e) {
+                // the server is not running anymore
+            }
+        }
+    }
+
+    /**
+     * Stops the pooled servers when the Maven session ends.
+     * <p>
+     * The plugin is built against the Maven 2 API, so the session is passed as
+     * an object and a listener is chained in front of its execution listener
+     * through reflection. Returns false if the session has no execution
+     * listener, in which case servers must not be pooled.
+     */
+    public static boolean stopOnSessionEnd(Object session) {
+        synchronized (sessions) {
+            for (Object registered : sessions) {
+                if (registered == session) {
+                    return true;
+                }
+            }
+            try {
+                Object request = session.getClass().getMethod("getRequest").invoke(session);
+                Class<?> listenerType = Class.forName("org.apache.maven.execution.ExecutionListener", false,
+                        request.getClass().getClassLoader());
+                Object delegate = request.getClass().getMethod("getExecutionListener").invoke(request);
+                Object listener = Proxy.newProxyInstance(listenerType.getClassLoader(), new Class<?>[] { listenerType },
+                        new SessionListener(session, delegate));
+                request.getClass().getMethod("setExecutionListener", listenerType).invoke(request, listener);
+            } catch (Exception e) {
+                return false;
+            }
+            sessions.add(session);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the pooled server if it is not in use and runs with the features,
+     * and marks it as in use.
+     */
+    public static Server acquire(File installDirectory, File userDirectory, String serverName, Set<String> features)
+            throws IOException {
+        String key = getKey(installDirectory, userDirectory, serverName);
+        synchronized (servers) {
+            Server server = servers.get(key);
+            if (server == null || server.inUse || !server.features.equals(features)) {
+                return null;
+            }
+            server.inUse = true;
+            return server;
+        }
+    }
+
+    /**
+     * Stops and removes the pooled servers that are not in use, and returns their names.
+     */
+    public static List<String> stopIdle() {
+        List<Server> idle = new ArrayList<Server>();
+        synchronized (servers) {
+            for (Iterator<Server> it = servers.values().iterator(); it.hasNext();) {
+                Server server = it.next();
+                if (!server.inUse) {
+                    idle.add(server);
+                    it.remove();
+                }
+            }
+        }
+        List<String> names = new ArrayList<String>();
+        for (Server server : idle) {
+            server.stop();
+            names.add(server.name);
+        }
+        return names;
+    }
+
+    /**
+     * Adds a started server to the pool. The server is in use until it is released.
+     *
+     * @param stopTask the task that stops the server when the session ends
+     */
+    public static Server add(File installDirectory, File userDirectory, String serverName, Set<String> features,
+            ServerTask stopTask) throws IOException {
+        Server server = new Server(serverName, features, stopTask);
+        synchronized (servers) {
+            servers.put(getKey(installDirectory, userDirectory, serverName), server);
+        }
+        return server;
+    }
+
+    /**
+     * Returns the pooled server, or null if the server is not pooled.
+     */
+    public static Server find(File installDirectory, File userDirectory, String serverName) throws IOException {
+        synchronized (servers) {
+            return servers.get(getKey(installDirectory, userDirectory, serverName));
+        }
+    }
+
+    /**
+     * Makes the pooled server available to later modules of the build.
+     */
+    public static void release(Server server) {
+        synchronized (servers) {
+            server.inUse = false;
+        }
+    }
+
+    /**
+     * Removes the server from the pool without stopping it.
+     */
+    public static void remove(File installDirectory, File userDirectory, String serverName) throws IOException {
+        synchronized (servers) {
+            servers.remove(getKey(installDirectory, userDirectory, serverName));
+        }
+    }
+
+    private static void stopAll() {
+        List<Server> all;
+        synchronized (servers) {
+            all = new ArrayList<Server>(servers.values());
+            servers.clear();
+        }
+        for (Server server : all) {
+            server.stop();
+        }
+    }
+
+    private static String getKey(File installDirectory, File userDirectory, String serverName) throws IOException {
+        return installDirectory.getCanonicalPath() + File.pathSeparator + userDirectory.getCanonicalPath()
+                + File.pathSeparator + serverName;
+    }
+
+    /**
+     * Forwards the events of a session to its original execution listener, and
+     * stops the pooled servers when the session ends.
+     */
+    private static class SessionListener implements InvocationHandler {
+        private final Object session;
+        private final Object delegate;
+
+        SessionListener(Object session, Object delegate) {
+            this.session = session;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            try {
+                if (delegate != null) {
+                    method.invoke(delegate, args);
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if ("sessionEnded".equals(method.getName())) {
+                    synchronized (sessions) {
+                        sessions.remove(session);
+                    }
+                    stopAll();
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Status of a server, determined without launching the server script.
+ * <p>
+ * A running server holds an exclusive lock on the <code>workarea/.sLock</code>
+ * file in its output directory. The lock is looked up in the lock table of
+ * the system instead of being tested with a lock of our own, which could make
+ * a server that starts at the same time believe that it is already running.
+ * The status is unknown where the lock table cannot be read, which is only
+ * supported on Linux, and if the lock file does not exist, since it is not
+ * created until the server has started and it is elsewhere if the output
+ * directory is set in the environment or in <code>server.env</code>.
+ */
+public enum ServerStatus {
+    RUNNING, STOPPED, UNKNOWN;
+
+    private static final String LOCK_FILE = "workarea/.sLock";
+
+    private static final Path LOCK_TABLE = Paths.get("/proc/locks");
+
+    /**
+     * @param serverOutputDirectory the output directory of the server
+     */
+    public static ServerStatus check(File serverOutputDirectory) {
+        File lockFile = new File(serverOutputDirectory, LOCK_FILE);
+        if (!lockFile.isFile() || !Files.isReadable(LOCK_TABLE)) {
+            return UNKNOWN;
+        }
+        try {
+            long inode = ((Number) Files.getAttribute(lockFile.toPath(), "unix:ino")).longValue();
+            long device = ((Number) Files.getAttribute(lockFile.toPath(), "unix:dev")).longValue();
+            // the lock table shows the device as hexadecimal major:minor numbers
+            String id = String.format("%02x:%02x:%d", ((device >> 8) & 0xfff) | ((device >> 32) & ~0xfffL),
+                    (device & 0xff) | ((device >> 12) & ~0xffL), inode);
+            for (String line : Files.readAllLines(LOCK_TABLE, StandardCharsets.US_ASCII)) {
+                // 1: POSIX  ADVISORY  WRITE 1234 08:01:5678 0 EOF, where waiting locks have "->" after the number
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length > 5 && !"->".equals(fields[1]) && "WRITE".equals(fields[3]) && id.equals(fields[5])) {
+                    return RUNNING;
+                }
+            }
+            return STOPPED;
+        } catch (IOException e) {
+            return UNKNOWN;
+        } catch (UnsupportedOperationException e) {
+            // the unix attribute view is not available, let the server script decide
+            return UNKNOWN;
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes a POSIX tar stream whose entries carry no timestamps or owner names.
+ * <p>
+ * Every entry has a modification time of 0 and the numeric owner set with
+ * {@link #setOwner(int, int)}, user and group 0 by default, so the same files
+ * always produce the same bytes. Names that do not fit in a ustar header are
+ * written with a PAX extended header.
+ */
+public class TarWriter {
+
+    private static final int BLOCK = 512;
+
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private int uid;
+
+    private int gid;
+
+    public TarWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Sets the user and group of the entries that are added next.
+     */
+    public void setOwner(int uid, int gid) {
+        this.uid = uid;
+        this.gid = gid;
+    }
+
+    public void addDirectory(String name, int mode) throws IOException {
+        writeHeader(name.endsWith("/") ? name : name + "/", mode, 0, '5');
+    }
+
+    public void addFile(String name, File file, int mode) throws IOException {
+        long size = file.length();
+        writeHeader(name, mode, size, '0');
+        InputStream in = new FileInputStream(file);
+        try {
+            long remaining = size;
+            while (remaining > 0) {
+                int count = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (count < 0) {
+                    throw new IOException("File " + file + " changed while it was written to the tar stream");
+                }
+                out.write(buffer, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            in.close();
+        }
+        pad(size);
+    }
+
+    /**
+     * Writes the end of archive marker. The underlying stream is not closed.
+     */
+    public void finish() throws IOException {
+        out.write(new byte[BLOCK * 2]);
+        out.flush();
+    }
+
+    private void writeHeader(String name, int mode, long size, char type) throws IOException {
+        byte[] nameBytes = name.getBytes(UTF_8);
+        int split = getPrefixLength(name, nameBytes);
+        if (split < 0 || size > MAX_USTAR_SIZE) {
+            StringBuilder records = new StringBuilder();
+            records.append(paxRecord("path", name));
+            if (size > MAX_USTAR_SIZE) {
+                records.append(paxRecord("size", Long.toString(size)));
+            }
+            byte[] pax = records.toString().getBytes(UTF_8);
+            out.write(header("././@PaxHeader".getBytes(UTF_8), 0, 0644, uid, gid, pax.length, 'x'));
+            out.write(pax);
+            pad(pax.length);
+            // the ustar fields are only used by readers that do not support PAX
+            byte[] truncated = new byte[Math.min(nameBytes.length, 100)];
+            System.arraycopy(nameBytes, 0, truncated, 0, truncated.length);
+            out.write(header(truncated, 0, mode, uid, gid, Math.min(size, MAX_USTAR_SIZE), type));
+        } else {
+            out.write(header(nameBytes, split, mode, uid, gid, size, type));
+        }
+    }
+
+    /**
+     * Returns the length of the name prefix that goes into the ustar prefix
+     * field, 0 if the name fits in the name field, or -1 if a PAX header is needed.
+     */
+    private static int getPrefixLength(String name, byte[] nameBytes) {
+        if (nameBytes.length != name.length()) {
+            // not ASCII
+            return -1;
+        }
+        if (nameBytes.length <= 100) {
+            return 0;
+        }
+        for (int i = name.lastIndexOf('/', name.length() - 2); i > 0; i = name.lastIndexOf('/', i - 1)) {
+            if (i <= 155 && nameBytes.length - i - 1 <= 100) {
+                return i;
+            }
+            if (nameBytes.length - i - 1 > 100) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] header(byte[] name, int split, int mode, int uid, int gid, long size, char type) {
+        byte[] header = new byte[BLOCK];
+        if (split > 0) {
+            System.arraycopy(name, split + 1, header, 0, name.length - split - 1);
+            System.arraycopy(name, 0, header, 345, split);
+        } else {
+            System.arraycopy(name, 0, header, 0, name.length);
+        }
+        octal(header, 100, 8, mode);
+        octal(header, 108, 8, uid);
+        octal(header, 116, 8, gid);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, 0);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(UTF_8), 0, header, 257, 8);
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xFF;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes a zero padded octal number followed by a NUL.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int pos = offset + length - 1;
+        header[pos--] = 0;
+        for (int i = digits.length() - 1; i >= 0 && pos >= offset; i--) {
+            header[pos--] = (byte) digits.charAt(i);
+        }
+        while (pos >= offset) {
+            header[pos--] = '0';
+        }
+    }
+
+    private static String paxRecord(String key, String value) {
+        // the length field counts the whole record, including its own digits
+        int length = key.length() + value.getBytes(UTF_8).length + 3;
+        int total = length + Integer.toString(length).length();
+        if (Integer.toString(total).length() != Integer.toString(length).length()) {
+            total++;
+        }
+        return total + " " + key + "=" + value + "\n";
+    }
+
+    private void pad(long size) throws IOException {
+        int remainder = (int) (size % BLOCK);
+        if (remainder != 0) {
+            out.write(new byte[BLOCK - remainder]);
+        }
+    }
+}
@@ -18,14 +18,11 @@ package net.wasdev.wlp.maven.plugins;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -38,22 +35,14 @@ public abstract class XmlDocument {
     protected Document doc;
     
     public void createDocument(String rootElement) throws ParserConfigurationException {
-        DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-        doc = docBuilder.newDocument();
+        doc = XmlFactories.getDocumentBuilder().newDocument();
         doc.setXmlStandalone(true);
         Element element = doc.createElement(rootElement);
         doc.appendChild(element);
     }
     
     public void createDocument(File xmlFile) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-        builderFactory.setIgnoringComments(true);
-        builderFactory.setCoalescing(true);
-        builderFactory.setIgnoringElementContentWhitespace(true);
-        builderFactory.setValidating(false);
-        DocumentBuilder builder = builderFactory.newDocumentBuilder();
-        doc = builder.parse(xmlFile);
+        doc = XmlFactories.getParsingDocumentBuilder().parse(xmlFile);
     }
         
     public void writeXMLDocument(String fileName) throws IOException, TransformerException {
@@ -65,21 +54,22 @@ public abstract class XmlDocument {
         if (!f.getParentFile().exists()) {
             f.getParentFile().mkdirs();
         }
-        FileOutputStream outFile = new FileOutputStream(f);
-        
-        DOMSource source = new DOMSource(doc);
-        StreamResult result = new StreamResult(outFile);
-        
-        TransformerFactory transformerFactory = TransformerFactory.newInstance();
-        Transformer transformer = transformerFactory.newTransformer();
-        transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
-        transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
-        transformer.setOutputProperty(OutputKeys.VERSION, "1.0");
-        transformer.setOutputProperty(OutputKeys.ENCODING,"UTF-8");
-        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-        
-        transformer.transform(source, result);
-        outFile.close();
+        // write to a staged file first, the server may be monitoring the target
+        Path staged = AtomicFiles.getStagingFile(f.toPath());
+        try {
+            FileOutputStream outFile = new FileOutputStream(staged.toFile());
+            
+            DOMSource source = new DOMSource(doc);
+            StreamResult result = new StreamResult(outFile);
+            
+            try {
+                XmlFactories.getTransformer().transform(source, result);
+            } finally {
+                outFile.close();
+            }
+            AtomicFiles.commit(staged, f.toPath());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
     }
 }
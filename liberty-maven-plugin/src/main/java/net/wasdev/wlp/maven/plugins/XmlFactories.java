@@ -0,0 +1,129 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/**
+ * Per-thread XML parsers and transformers.
+ * <p>
+ * Looking up the JAXP factories is expensive and the builders and
+ * transformers they create are not thread safe, so each thread creates its
+ * own instances once and resets them between uses.
+ */
+public final class XmlFactories {
+
+    private static final ThreadLocal<DocumentBuilder> newDocumentBuilder = new ThreadLocal<DocumentBuilder>();
+
+    private static final ThreadLocal<DocumentBuilder> parsingBuilder = new ThreadLocal<DocumentBuilder>();
+
+    private static final ThreadLocal<Transformer> transformer = new ThreadLocal<Transformer>();
+
+    private static final ThreadLocal<XMLInputFactory> inputFactory = new ThreadLocal<XMLInputFactory>();
+
+    private static final ThreadLocal<XMLOutputFactory> outputFactory = new ThreadLocal<XMLOutputFactory>();
+
+    private XmlFactories() {
+    }
+
+    /**
+     * Returns a builder for creating new documents.
+     */
+    public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = newDocumentBuilder.get();
+        if (builder == null) {
+            builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+            newDocumentBuilder.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a non-validating builder for parsing documents that ignores
+     * comments and element content whitespace.
+     */
+    public static DocumentBuilder getParsingDocumentBuilder() throws ParserConfigurationException {
+        DocumentBuilder builder = parsingBuilder.get();
+        if (builder == null) {
+            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+            builderFactory.setIgnoringComments(true);
+            builderFactory.setCoalescing(true);
+            builderFactory.setIgnoringElementContentWhitespace(true);
+            builderFactory.setValidating(false);
+            builder = builderFactory.newDocumentBuilder();
+            parsingBuilder.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+
+    /**
+     * Returns a transformer that writes indented UTF-8 documents.
+     */
+    public static Transformer getTransformer() throws TransformerConfigurationException {
+        Transformer t = transformer.get();
+        if (t == null) {
+            t = TransformerFactory.newInstance().newTransformer();
+            transformer.set(t);
+        } else {
+            t.reset();
+        }
+        t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "no");
+        t.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, "yes");
+        t.setOutputProperty(OutputKeys.VERSION, "1.0");
+        t.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        t.setOutputProperty(OutputKeys.INDENT, "yes");
+        t.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+        return t;
+    }
+
+    /**
+     * Returns a StAX input factory with DTD and external entity support disabled.
+     */
+    public static XMLInputFactory getInputFactory() {
+        XMLInputFactory factory = inputFactory.get();
+        if (factory == null) {
+            factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            inputFactory.set(factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Returns a StAX output factory.
+     */
+    public static XMLOutputFactory getOutputFactory() {
+        XMLOutputFactory factory = outputFactory.get();
+        if (factory == null) {
+            factory = XMLOutputFactory.newInstance();
+            outputFactory.set(factory);
+        }
+        return factory;
+    }
+}
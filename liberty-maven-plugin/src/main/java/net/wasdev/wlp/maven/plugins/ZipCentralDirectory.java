@@ -0,0 +1,295 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip archive in a single pass.
+ * <p>
+ * Unlike {@link java.util.zip.ZipFile}, this exposes the raw central directory
+ * fields such as the external file attributes (which carry the Unix permissions)
+ * and the local header offsets.
+ */
+public class ZipCentralDirectory {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int EOCD_MIN_LENGTH = 22;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EOCD_LOCATOR_LENGTH = 20;
+    private static final int ZIP64_EOCD_SIGNATURE = 0x06064b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int UNIX_HOST = 3;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<Entry> entries;
+
+    private ZipCentralDirectory(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public static ZipCentralDirectory read(File archive) throws IOException {
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            return new ZipCentralDirectory(parseEntries(readCentralDirectory(channel)));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns a SHA-1 digest of the raw central directory of an archive. Since
+     * the central directory records the name, size and CRC of every entry, two
+     * archives with the same digest have the same content.
+     */
+    public static String readDigest(File archive) throws IOException {
+        FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            return digest(readCentralDirectory(channel));
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static ByteBuffer readCentralDirectory(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < EOCD_MIN_LENGTH) {
+            throw new ZipException("Not a zip archive");
+        }
+
+        // the end of central directory record is followed by a variable length comment
+        int tailLength = (int) Math.min(fileSize, EOCD_MIN_LENGTH + MAX_COMMENT_LENGTH);
+        ByteBuffer tail = readFully(channel, fileSize - tailLength, tailLength);
+        int eocd = -1;
+        for (int i = tailLength - EOCD_MIN_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == EOCD_SIGNATURE) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new ZipException("End of central directory record not found");
+        }
+
+        long cdSize = tail.getInt(eocd + 12) & ZIP64_MAGIC;
+        long cdOffset = tail.getInt(eocd + 16) & ZIP64_MAGIC;
+
+        if (cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) {
+            int locator = eocd - ZIP64_EOCD_LOCATOR_LENGTH;
+            if (locator < 0 || tail.getInt(locator) != ZIP64_EOCD_LOCATOR_SIGNATURE) {
+                throw new ZipException("Zip64 end of central directory locator not found");
+            }
+            long zip64Eocd = tail.getLong(locator + 8);
+            ByteBuffer record = readFully(channel, zip64Eocd, 56);
+            if (record.getInt(0) != ZIP64_EOCD_SIGNATURE) {
+                throw new ZipException("Zip64 end of central directory record not found");
+            }
+            cdSize = record.getLong(40);
+            cdOffset = record.getLong(48);
+        }
+
+        if (cdSize > Integer.MAX_VALUE || cdOffset + cdSize > fileSize) {
+            throw new ZipException("Invalid central directory");
+        }
+        return readFully(channel, cdOffset, (int) cdSize);
+    }
+
+    private static List<Entry> parseEntries(ByteBuffer cd) throws IOException {
+        List<Entry> result = new ArrayList<Entry>();
+        int pos = 0;
+        while (pos < cd.limit()) {
+            if (pos + CENTRAL_HEADER_LENGTH > cd.limit()) {
+                throw new ZipException("Truncated central directory");
+            }
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                // entries past this point would be silently lost
+                throw new ZipException("Central directory header not found at offset " + pos + " of the central directory");
+            }
+            Entry entry = new Entry();
+            entry.versionMadeBy = cd.getShort(pos + 4) & 0xFFFF;
+            entry.flags = cd.getShort(pos + 8) & 0xFFFF;
+            entry.method = cd.getShort(pos + 10) & 0xFFFF;
+            entry.dosTime = cd.getInt(pos + 12) & ZIP64_MAGIC;
+            entry.crc = cd.getInt(pos + 16) & ZIP64_MAGIC;
+            entry.compressedSize = cd.getInt(pos + 20) & ZIP64_MAGIC;
+            entry.size = cd.getInt(pos + 24) & ZIP64_MAGIC;
+            int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            entry.externalAttributes = cd.getInt(pos + 38) & ZIP64_MAGIC;
+            entry.localHeaderOffset = cd.getInt(pos + 42) & ZIP64_MAGIC;
+
+            int namePos = pos + CENTRAL_HEADER_LENGTH;
+            if (namePos + nameLength + extraLength + commentLength > cd.limit()) {
+                throw new ZipException("Truncated central directory");
+            }
+            byte[] name = new byte[nameLength];
+            for (int i = 0; i < nameLength; i++) {
+                name[i] = cd.get(namePos + i);
+            }
+            entry.name = new String(name, UTF_8);
+
+            if (entry.size == ZIP64_MAGIC || entry.compressedSize == ZIP64_MAGIC || entry.localHeaderOffset == ZIP64_MAGIC) {
+                readZip64Extra(cd, namePos + nameLength, extraLength, entry);
+            }
+
+            result.add(entry);
+            pos = namePos + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private static void readZip64Extra(ByteBuffer cd, int start, int length, Entry entry) {
+        int pos = start;
+        int end = start + length;
+        while (pos + 4 <= end) {
+            int id = cd.getShort(pos) & 0xFFFF;
+            int size = cd.getShort(pos + 2) & 0xFFFF;
+            if (id == ZIP64_EXTRA_ID) {
+                int field = pos + 4;
+                // fields are only present for the values that overflowed, in this order
+                if (entry.size == ZIP64_MAGIC && field + 8 <= end) {
+                    entry.size = cd.getLong(field);
+                    field += 8;
+                }
+                if (entry.compressedSize == ZIP64_MAGIC && field + 8 <= end) {
+                    entry.compressedSize = cd.getLong(field);
+                    field += 8;
+                }
+                if (entry.localHeaderOffset == ZIP64_MAGIC && field + 8 <= end) {
+                    entry.localHeaderOffset = cd.getLong(field);
+                }
+                return;
+            }
+            pos += 4 + size;
+        }
+    }
+
+    private static String digest(ByteBuffer cd) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(cd);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of zip archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * A single central directory file header.
+     */
+    public static class Entry {
+
+        private String name;
+        private int versionMadeBy;
+        private int flags;
+        private int method;
+        private long dosTime;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long externalAttributes;
+        private long localHeaderOffset;
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        /**
+         * Returns the Unix permission bits of this entry, or -1 if the archive
+         * was not created on a Unix host and carries no permissions.
+         */
+        public int getUnixMode() {
+            if ((versionMadeBy >> 8) != UNIX_HOST) {
+                return -1;
+            }
+            int mode = (int) (externalAttributes >>> 16) & 07777;
+            return mode == 0 ? -1 : mode;
+        }
+    }
+}
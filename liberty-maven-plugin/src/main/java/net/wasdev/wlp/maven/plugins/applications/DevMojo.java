@@ -0,0 +1,498 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins.applications;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.ApplicationXmlDocument;
+import net.wasdev.wlp.maven.plugins.DirectoryWatcher;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
+
+/**
+ * Run a web project on a Liberty server and apply source changes while the server keeps running.
+ */
+@Mojo(name = "dev", requiresDependencyResolution = ResolutionScope.COMPILE)
+public class DevMojo extends InstallAppMojoSupport {
+
+    /**
+     * Time in milliseconds without further changes before a batch of changes is applied.
+     */
+    @Parameter(property = "quietPeriod", defaultValue = "100")
+    private long quietPeriod = 100;
+
+    @Component
+    private MavenProjectBuilder projectBuilder;
+
+    private JavaCompiler compiler;
+
+    private File classesDirectory;
+
+    private List<File> sourceRoots;
+
+    @Override
+    protected void doExecute() throws Exception {
+        if (skip) {
+            return;
+        }
+        if (!"war".equals(project.getPackaging())) {
+            throw new MojoExecutionException(MessageFormat.format(messages.getString("error.dev.packaging"),
+                    project.getPackaging()));
+        }
+        compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new MojoExecutionException(messages.getString("error.dev.compiler"));
+        }
+        if (isInstall) {
+            installServerAssembly();
+        } else {
+            log.info(MessageFormat.format(messages.getString("info.install.type.preexisting"), ""));
+            checkServerHomeExists();
+        }
+        if (!serverDirectory.exists()) {
+            log.info(MessageFormat.format(messages.getString("info.server.start.create"), serverName));
+            ServerTask serverTask = initializeJava();
+            serverTask.setOperation("create");
+            serverTask.execute();
+        }
+        copyConfigFiles();
+        exportParametersToXml();
+
+        classesDirectory = new File(project.getBuild().getOutputDirectory());
+        sourceRoots = new ArrayList<File>();
+        @SuppressWarnings("unchecked")
+        List<String> srcDirs = project.getCompileSourceRoots();
+        for (String dir : srcDirs) {
+            File root = new File(dir);
+            if (root.isDirectory()) {
+                sourceRoots.add(root.getCanonicalFile());
+            }
+        }
+
+        // bring the classes up to date before the application is installed
+        classesDirectory.mkdirs();
+        compile(getSources(true));
+        installApplication();
+        startServer();
+
+        DirectoryWatcher watcher = new DirectoryWatcher();
+        try {
+            for (File root : sourceRoots) {
+                watcher.watchTree(root);
+            }
+            for (Resource resource : getResources()) {
+                watcher.watchTree(new File(resource.getDirectory()));
+            }
+            if (configDirectory != null) {
+                watcher.watchTree(configDirectory);
+            }
+            for (File file : getConfigFiles()) {
+                watcher.watchFile(file);
+            }
+            watcher.watchFile(project.getFile());
+            watcher.watchFile(getEclipseComponentFile());
+
+            log.info(MessageFormat.format(messages.getString("info.dev.watching"), project.getId()));
+            while (true) {
+                Set<File> changes = watcher.take(quietPeriod);
+                try {
+                    applyChanges(changes);
+                } catch (Exception e) {
+                    // a failed batch must not end the session, the next save is applied again
+                    log.error(MessageFormat.format(messages.getString("error.dev.update"), e.getMessage()));
+                    log.debug("Error applying changes", e);
+                }
+            }
+        } finally {
+            watcher.close();
+        }
+    }
+
+    private void applyChanges(Set<File> changes) throws Exception {
+        long start = System.currentTimeMillis();
+        Set<File> sources = new LinkedHashSet<File>();
+        Set<String> classNames = new LinkedHashSet<String>();
+        int resources = 0;
+        boolean configChanged = false;
+        boolean applicationChanged = false;
+
+        for (File file : changes) {
+            File root = getRoot(file, sourceRoots);
+            if (root != null) {
+                String name = file.getName();
+                if (name.endsWith(".java")) {
+                    if (file.isFile()) {
+                        sources.add(file);
+                        classNames.add(name.substring(0, name.length() - 5));
+                    } else if (!file.exists()) {
+                        deleteClasses(root, file);
+                        classNames.add(name.substring(0, name.length() - 5));
+                    }
+                }
+                continue;
+            }
+            Resource resource = getResource(file);
+            if (resource != null) {
+                if (syncResource(resource, file)) {
+                    resources++;
+                }
+                continue;
+            }
+            if (isConfigFile(file)) {
+                configChanged = true;
+            } else if (file.equals(project.getFile().getCanonicalFile())) {
+                log.warn(messages.getString("warn.dev.pom"));
+                reloadProject();
+                applicationChanged = true;
+            } else if (file.equals(getEclipseComponentFile().getCanonicalFile())) {
+                applicationChanged = true;
+            }
+        }
+
+        if (configChanged) {
+            copyConfigFiles();
+        }
+        int compiled = 0;
+        if (!classNames.isEmpty()) {
+            List<File> dependents = getDependentSources(sources, classNames);
+            if (compile(dependents)) {
+                compiled = dependents.size();
+            } else {
+                log.warn(messages.getString("warn.dev.compile"));
+            }
+        }
+        if (applicationChanged) {
+            installApplication();
+        }
+        if (compiled > 0 || resources > 0) {
+            log.info(MessageFormat.format(messages.getString("info.dev.updated"), compiled, resources,
+                    System.currentTimeMillis() - start));
+        }
+    }
+
+    /**
+     * Builds the project again from the changed POM and resolves its
+     * dependencies, so that the compiler and the loose application
+     * configuration use the new dependencies.
+     */
+    private void reloadProject() throws Exception {
+        project = projectBuilder.buildWithDependencies(project.getFile(), artifactRepository, null);
+    }
+
+    private void installApplication() throws Exception {
+        applicationXml = new ApplicationXmlDocument();
+        installLooseConfigApp();
+
+        // create application configuration in configDropins if it is not configured
+        if (applicationXml.hasChildElements()) {
+            log.warn(messages.getString("warn.install.app.add.configuration"));
+            applicationXml.writeApplicationXmlDocument(serverDirectory);
+        } else if (ApplicationXmlDocument.getApplicationXmlFile(serverDirectory).exists()) {
+            ApplicationXmlDocument.getApplicationXmlFile(serverDirectory).delete();
+        }
+    }
+
+    private void startServer() throws Exception {
+        if (getServerStatus() == ServerStatus.RUNNING) {
+            return;
+        }
+        ServerTask serverTask = initializeJava();
+        serverTask.setOperation("start");
+        serverTask.execute();
+
+        final ServerTask stopTask = initializeJava();
+        stopTask.setOperation("stop");
+        Runtime.getRuntime().addShutdownHook(new Thread("liberty-dev-stop") {
+            @Override
+            public void run() {
+                try {
+                    stopTask.execute();
+                } catch (Exception e) {
+                    // the server is not running anymore
+                }
+            }
+        });
+    }
+
+    /**
+     * Compiles the given sources into the classes directory.
+     *
+     * @return false if the compilation failed
+     */
+    private boolean compile(Collection<File> sources) throws Exception {
+        if (sources.isEmpty()) {
+            return true;
+        }
+        List<String> options = new ArrayList<String>();
+        options.add("-d");
+        options.add(classesDirectory.getPath());
+        options.add("-classpath");
+        @SuppressWarnings("unchecked")
+        List<String> classpath = project.getCompileClasspathElements();
+        options.add(join(classpath));
+        List<String> roots = new ArrayList<String>();
+        for (File root : sourceRoots) {
+            roots.add(root.getPath());
+        }
+        options.add("-sourcepath");
+        options.add(join(roots));
+        options.add("-g");
+        String encoding = project.getProperties().getProperty("project.build.sourceEncoding");
+        if (encoding != null) {
+            options.add("-encoding");
+            options.add(encoding);
+        }
+        addCompilerOption(options, "source");
+        addCompilerOption(options, "target");
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(sources)).call();
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    log.error(diagnostic.toString());
+                } else {
+                    log.debug(diagnostic.toString());
+                }
+            }
+            return success;
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private void addCompilerOption(List<String> options, String name) {
+        String value = null;
+        @SuppressWarnings("unchecked")
+        List<Plugin> plugins = project.getBuildPlugins();
+        for (Plugin plugin : plugins) {
+            if ("org.apache.maven.plugins:maven-compiler-plugin".equals(plugin.getKey())
+                    && plugin.getConfiguration() instanceof Xpp3Dom) {
+                Xpp3Dom val = ((Xpp3Dom) plugin.getConfiguration()).getChild(name);
+                if (val != null) {
+                    value = val.getValue();
+                }
+            }
+        }
+        if (value == null) {
+            value = project.getProperties().getProperty("maven.compiler." + name);
+        }
+        if (value != null) {
+            options.add("-" + name);
+            options.add(value);
+        }
+    }
+
+    /**
+     * Returns the sources of the source roots.
+     *
+     * @param staleOnly whether to return only the sources that have no class
+     *        file or a class file older than the source
+     */
+    private List<File> getSources(final boolean staleOnly) throws IOException {
+        final List<File> sources = new ArrayList<File>();
+        for (final File root : sourceRoots) {
+            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".java")) {
+                        File classFile = new File(getClassDirectory(root, file.toFile()),
+                                name.substring(0, name.length() - 5) + ".class");
+                        if (!staleOnly || classFile.lastModified() < attrs.lastModifiedTime().toMillis()) {
+                            sources.add(file.toFile());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return sources;
+    }
+
+    /**
+     * Returns the changed sources and the other sources that refer to one of
+     * the changed classes by its simple name, so that they are checked against
+     * the changed classes. The compiler finds the other classes that they use
+     * in the classes directory or on the source path.
+     */
+    private List<File> getDependentSources(Set<File> changed, Set<String> classNames) throws IOException {
+        List<File> sources = new ArrayList<File>(changed);
+        StringBuilder regex = new StringBuilder("\\b(");
+        for (String className : classNames) {
+            if (regex.charAt(regex.length() - 1) != '(') {
+                regex.append('|');
+            }
+            regex.append(Pattern.quote(className));
+        }
+        Pattern pattern = Pattern.compile(regex.append(")\\b").toString());
+        for (File source : getSources(false)) {
+            // the names are ASCII, so any source encoding can be read as ISO-8859-1
+            if (!changed.contains(source) && pattern.matcher(
+                    new String(Files.readAllBytes(source.toPath()), StandardCharsets.ISO_8859_1)).find()) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
+    private void deleteClasses(File root, File source) {
+        String name = source.getName();
+        String className = name.substring(0, name.length() - 5);
+        File[] classFiles = getClassDirectory(root, source).listFiles();
+        if (classFiles != null) {
+            for (File classFile : classFiles) {
+                String fileName = classFile.getName();
+                if (fileName.equals(className + ".class")
+                        || (fileName.startsWith(className + "$") && fileName.endsWith(".class"))) {
+                    log.debug("Deleting class file " + classFile);
+                    classFile.delete();
+                }
+            }
+        }
+    }
+
+    private File getClassDirectory(File root, File source) {
+        String relative = root.toPath().relativize(source.getParentFile().toPath()).toString();
+        return relative.isEmpty() ? classesDirectory : new File(classesDirectory, relative);
+    }
+
+    /**
+     * Copies a changed resource to the classes directory, or deletes it there
+     * if it was deleted.
+     *
+     * @return true if the classes directory was updated
+     */
+    private boolean syncResource(Resource resource, File file) throws IOException {
+        File root = new File(resource.getDirectory()).getCanonicalFile();
+        File targetRoot = resource.getTargetPath() == null ? classesDirectory
+                : new File(classesDirectory, resource.getTargetPath());
+        File target = new File(targetRoot, root.toPath().relativize(file.toPath()).toString());
+        if (file.isFile()) {
+            target.getParentFile().mkdirs();
+            Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } else if (!file.exists() && target.isFile()) {
+            return target.delete();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the resources that are copied as is. Filtered resources need the
+     * Maven resources plugin and are left alone.
+     */
+    private List<Resource> getResources() {
+        List<Resource> resources = new ArrayList<Resource>();
+        @SuppressWarnings("unchecked")
+        List<Resource> projectResources = project.getResources();
+        for (Resource resource : projectResources) {
+            if (!resource.isFiltering() && new File(resource.getDirectory()).isDirectory()) {
+                resources.add(resource);
+            }
+        }
+        return resources;
+    }
+
+    private Resource getResource(File file) throws IOException {
+        for (Resource resource : getResources()) {
+            if (file.toPath().startsWith(new File(resource.getDirectory()).getCanonicalFile().toPath())) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    private List<File> getConfigFiles() {
+        List<File> files = new ArrayList<File>();
+        for (File file : new File[] { configFile, bootstrapPropertiesFile, jvmOptionsFile, serverEnv }) {
+            if (file != null) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private boolean isConfigFile(File file) throws IOException {
+        if (configDirectory != null && file.toPath().startsWith(configDirectory.getCanonicalFile().toPath())) {
+            return true;
+        }
+        for (File configFile : getConfigFiles()) {
+            if (file.equals(configFile.getCanonicalFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private File getEclipseComponentFile() {
+        return new File(project.getBasedir(), ".settings/org.eclipse.wst.common.component");
+    }
+
+    private static File getRoot(File file, Collection<File> roots) {
+        for (File root : roots) {
+            if (file.toPath().startsWith(root.toPath())) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    private static String join(Collection<String> paths) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : paths) {
+            if (sb.length() != 0) {
+                sb.append(File.pathSeparator);
+            }
+            sb.append(path);
+        }
+        return sb.toString();
+    }
+}
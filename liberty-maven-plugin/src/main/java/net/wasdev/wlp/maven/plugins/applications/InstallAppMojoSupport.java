@@ -17,12 +17,19 @@ package net.wasdev.wlp.maven.plugins.applications;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -32,12 +39,16 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
-import org.apache.tools.ant.taskdefs.Copy;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 import net.wasdev.wlp.maven.plugins.ApplicationXmlDocument;
+import net.wasdev.wlp.maven.plugins.AtomicFiles;
+import net.wasdev.wlp.maven.plugins.FileDigests;
+import net.wasdev.wlp.maven.plugins.ServerConfigDocument;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
+import net.wasdev.wlp.maven.plugins.XmlFactories;
 import net.wasdev.wlp.maven.plugins.server.PluginConfigSupport;
 
 /**
@@ -47,7 +58,74 @@ public class InstallAppMojoSupport extends PluginConfigSupport {
     
     protected ApplicationXmlDocument applicationXml = new ApplicationXmlDocument();
     
+    private Set<String> configuredLocations;
+    
+    private FileDigests digests;
+    
+    private Boolean serverStopped;
+    
+    /**
+     * Installs the artifacts concurrently. The apps directory and the
+     * application locations of the source server.xml are resolved once up front.
+     * The application configuration is added in the order of the artifacts once
+     * all of them are installed, so it does not depend on thread scheduling.
+     */
+    protected void installApps(Collection<Artifact> artifacts) throws Exception {
+        if (artifacts.size() <= 1) {
+            for (Artifact artifact : artifacts) {
+                installApp(artifact);
+            }
+            return;
+        }
+        getAppsDirectory();
+        getConfiguredLocations();
+        
+        int threads = Math.min(artifacts.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (final Artifact artifact : artifacts) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return installAppFile(artifact);
+                    }
+                }));
+            }
+            List<String> unconfigured = new ArrayList<String>();
+            for (Future<String> future : futures) {
+                try {
+                    String fileName = future.get();
+                    if (fileName != null) {
+                        unconfigured.add(fileName);
+                    }
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            for (String fileName : unconfigured) {
+                applicationXml.createApplicationElement(fileName);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
     protected void installApp(Artifact artifact) throws Exception {
+        String fileName = installAppFile(artifact);
+        if (fileName != null) {
+            applicationXml.createApplicationElement(fileName);
+        }
+    }
+    
+    /**
+     * Copies the application into the server. Returns the file name of the
+     * application if its configuration has to be added, or null.
+     */
+    private String installAppFile(Artifact artifact) throws Exception {
         
         if (artifact.getFile() == null || artifact.getFile().isDirectory()) {
             String warName = getWarFileName(project);
@@ -62,22 +140,83 @@ public class InstallAppMojoSupport extends PluginConfigSupport {
         File destDir = new File(serverDirectory, getAppsDirectory());
         log.info(MessageFormat.format(messages.getString("info.install.app"), artifact.getFile().getCanonicalPath()));
         
-        Copy copyFile = (Copy) ant.createTask("copy");
-        copyFile.setFile(artifact.getFile());
         String fileName = artifact.getFile().getCanonicalPath();
+        File destFile;
         if (stripVersion) {
             fileName = stripVersionFromName(artifact.getFile().getCanonicalPath(), artifact.getVersion());
             fileName = fileName.substring(fileName.lastIndexOf(File.separator) + 1);
-            copyFile.setTofile(new File(destDir, fileName));
+            destFile = new File(destDir, fileName);
         } else {
-            copyFile.setTodir(destDir);
+            destFile = new File(destDir, artifact.getFile().getName());
         }
         
-        // validate application configuration if appsDirectory="dropins" or inject webApplication
-        // to target server.xml if not found for appsDirectory="apps"
-        validateAppConfig(fileName);
+        // validate application configuration if appsDirectory="dropins" or find out whether
+        // webApplication has to be injected to target server.xml if not found for appsDirectory="apps"
+        boolean unconfigured = isAppConfigNeeded(fileName);
         
-        copyFile.execute();
+        copyApp(artifact.getFile(), destFile);
+        return unconfigured ? fileName : null;
+    }
+    
+    // copy the application unless the installed copy has the same content, so the server does not restart it
+    private void copyApp(File source, File dest) throws IOException {
+        FileDigests digests = getDigests();
+        if (dest.isFile()) {
+            if (Files.isSameFile(source.toPath(), dest.toPath())
+                    || (dest.length() == source.length() && digests.getDigest(dest).equals(digests.getDigest(source)))) {
+                log.debug("Application " + dest + " is up to date");
+                digests.store();
+                return;
+            }
+        }
+        Files.createDirectories(dest.getParentFile().toPath());
+        if (linkApps && isServerStopped() && linkApp(source, dest)) {
+            log.debug("Application " + dest + " is linked to " + source);
+            return;
+        }
+        // stage the copy next to the destination so the server never sees a partial file
+        AtomicFiles.copy(source.toPath(), dest.toPath());
+        digests.setDigest(dest, digests.getDigest(source));
+        digests.store();
+    }
+    
+    private boolean linkApp(File source, File dest) throws IOException {
+        try {
+            AtomicFiles.link(source.toPath(), dest.toPath());
+            return true;
+        } catch (IOException e) {
+            // not on the same file system
+            log.debug("Failed to link " + dest + ": " + e.getMessage());
+        } catch (UnsupportedOperationException e) {
+            log.debug("Failed to link " + dest + ": " + e.getMessage());
+        }
+        return false;
+    }
+    
+    /**
+     * Returns true if the server is known to be stopped, or has never been
+     * started. A build that rewrites an artifact in place, such as
+     * maven-war-plugin, would change a linked application under a running
+     * server, so applications are only linked while the server is stopped.
+     */
+    private synchronized boolean isServerStopped() {
+        if (serverStopped == null) {
+            File serverOutputDirectory = new File(outputDirectory, serverName);
+            ServerStatus status = ServerStatus.check(serverOutputDirectory);
+            serverStopped = status == ServerStatus.STOPPED
+                    || (status == ServerStatus.UNKNOWN && !new File(serverOutputDirectory, "workarea").exists());
+            if (!serverStopped) {
+                log.debug("Server " + serverName + " may be running, applications are copied instead of linked");
+            }
+        }
+        return serverStopped;
+    }
+    
+    private synchronized FileDigests getDigests() {
+        if (digests == null) {
+            digests = new FileDigests(new File(project.getBuild().getDirectory(), "liberty-app-digests.properties"));
+        }
+        return digests;
     }
     
     // install project artifact using loose application configuration file 
@@ -137,7 +276,9 @@ public class InstallAppMojoSupport extends PluginConfigSupport {
             }
         }
         
-        config.toXmlFile(looseConfigFile);
+        if (!config.toXmlFile(looseConfigFile)) {
+            log.debug("Loose application configuration " + looseConfigFile + " is up to date");
+        }
     }
     
     private boolean containsJavaSource(MavenProject proj) {
@@ -218,13 +359,7 @@ public class InstallAppMojoSupport extends PluginConfigSupport {
         
         File f = new File(project.getBasedir(), ".settings/org.eclipse.wst.common.component");
         if (f.exists()) {
-            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-            builderFactory.setIgnoringComments(true);
-            builderFactory.setCoalescing(true);
-            builderFactory.setIgnoringElementContentWhitespace(true);
-            builderFactory.setValidating(false);
-            DocumentBuilder builder = builderFactory.newDocumentBuilder();
-            Document doc = builder.parse(f);
+            Document doc = XmlFactories.getParsingDocumentBuilder().parse(f);
             XPath xPath = XPathFactory.newInstance().newXPath();
             String expression = "/project-modules/wb-module/dependent-module";
             NodeList nodes = (NodeList) xPath.compile(expression).evaluate(doc, XPathConstants.NODESET);
@@ -251,12 +386,43 @@ public class InstallAppMojoSupport extends PluginConfigSupport {
     }
     
     private void validateAppConfig(String fileName) throws Exception {
-        String appsDir = getAppsDirectory();
-        if (appsDir.equalsIgnoreCase("apps") && !isAppConfiguredInSourceServerXml(fileName)) {
+        if (isAppConfigNeeded(fileName)) {
             // add application configuration
             applicationXml.createApplicationElement(fileName);
         }
-        else if (appsDir.equalsIgnoreCase("dropins") && isAppConfiguredInSourceServerXml(fileName))
+    }
+    
+    private boolean isAppConfigNeeded(String fileName) throws Exception {
+        String appsDir = getAppsDirectory();
+        boolean configured = getConfiguredLocations().contains(fileName);
+        if (configured) {
+            log.debug("Application configuration is found in server.xml : " + fileName);
+        }
+        if (appsDir.equalsIgnoreCase("apps") && !configured) {
+            return true;
+        }
+        else if (appsDir.equalsIgnoreCase("dropins") && configured)
             throw new MojoExecutionException(messages.getString("error.install.app.dropins.directory"));
+        return false;
+    }
+    
+    // application locations configured in the source server.xml, resolved once per execution
+    private synchronized Set<String> getConfiguredLocations() {
+        if (configuredLocations == null) {
+            configuredLocations = Collections.emptySet();
+            File serverXML = getFileFromConfigDirectory("server.xml", configFile);
+            if (serverXML != null && serverXML.exists()) {
+                try {
+                    ServerConfigDocument scd = getServerConfigDocument(serverXML, configDirectory);
+                    if (scd != null) {
+                        configuredLocations = scd.getLocations();
+                    }
+                } catch (Exception e) {
+                    log.warn(e.getLocalizedMessage());
+                    log.debug(e);
+                }
+            }
+        }
+        return configuredLocations;
     }
 }
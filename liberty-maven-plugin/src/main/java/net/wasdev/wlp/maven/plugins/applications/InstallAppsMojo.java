@@ -17,6 +17,8 @@ package net.wasdev.wlp.maven.plugins.applications;
 
 import java.io.File;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
@@ -82,6 +84,7 @@ public class InstallAppsMojo extends InstallAppMojoSupport {
     private void installDependencies() throws Exception {
         @SuppressWarnings("unchecked")
         Set<Artifact> artifacts = (Set<Artifact>) project.getDependencyArtifacts();
+        List<Artifact> apps = new ArrayList<Artifact>();
         for (Artifact dep : artifacts) {
             // skip if not an application type supported by Liberty
             if (!isSupportedType(dep.getType())) {
@@ -92,9 +95,10 @@ public class InstallAppsMojo extends InstallAppMojoSupport {
                 continue;
             }
             if (dep.getScope().equals("compile")) {
-                installApp(dep);
+                apps.add(dep);
             }
         }
+        installApps(apps);
     }
     
     private void installProject() throws Exception {
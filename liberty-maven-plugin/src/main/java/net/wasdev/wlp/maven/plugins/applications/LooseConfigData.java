@@ -15,15 +15,27 @@
  */
 package net.wasdev.wlp.maven.plugins.applications;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.TreeMap;
 
-import org.w3c.dom.Element;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
-import net.wasdev.wlp.maven.plugins.XmlDocument;
+import net.wasdev.wlp.maven.plugins.AtomicFiles;
+import net.wasdev.wlp.maven.plugins.XmlFactories;
 
-public class LooseConfigData extends XmlDocument {
+/**
+ * Loose application configuration. The entries are written in sorted order so
+ * that the same configuration always produces the same file.
+ */
+public class LooseConfigData {
+    
+    private static final String INDENT = "    ";
     
     private Map<String, String> dirs;
     
@@ -32,9 +44,9 @@ public class LooseConfigData extends XmlDocument {
     private Map<String, String> archives;
     
     public LooseConfigData() {
-        dirs = new HashMap<String, String>();
-        files = new HashMap<String, String>();
-        archives = new HashMap<String, String>();
+        dirs = new TreeMap<String, String>();
+        files = new TreeMap<String, String>();
+        archives = new TreeMap<String, String>();
     }
     
     public void addDir(String src, String target) {
@@ -49,41 +61,73 @@ public class LooseConfigData extends XmlDocument {
         archives.put(src, target);
     }
     
-    public void toXmlFile(File xmlFile) throws Exception {
-        createDocument("archive");
-        
-        if (!dirs.isEmpty()) {
-            for(Map.Entry<String, String> entry : dirs.entrySet()){
-                Element child = doc.createElement("dir");
-                addElement(doc.getDocumentElement(), child, entry.getValue(), entry.getKey());
-            }
+    /**
+     * Writes the configuration to the given file unless the file already has
+     * the same content, so that the server does not see a spurious update.
+     * 
+     * @return true if the file was written
+     */
+    public boolean toXmlFile(File xmlFile) throws Exception {
+        byte[] content = toXml();
+        if (xmlFile.isFile() && xmlFile.length() == content.length
+                && Arrays.equals(content, Files.readAllBytes(xmlFile.toPath()))) {
+            return false;
         }
-        
-        if (!files.isEmpty()) {
-            for(Map.Entry<String, String> entry : files.entrySet()){
-                Element child = doc.createElement("file");
-                addElement(doc.getDocumentElement(), child, entry.getValue(), entry.getKey());
-            }
+        if (!xmlFile.getParentFile().exists()) {
+            xmlFile.getParentFile().mkdirs();
         }
-        
-        if (!archives.isEmpty()) {
-            for(Map.Entry<String, String> entry : archives.entrySet()){
-                Element child = doc.createElement("archive");
-                addElement(doc.getDocumentElement(), child, entry.getValue());
-                addElement(child, doc.createElement("dir"), "/", entry.getKey());
+        AtomicFiles.write(xmlFile.toPath(), content);
+        return true;
+    }
+    
+    private byte[] toXml() throws XMLStreamException, IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer = XmlFactories.getOutputFactory().createXMLStreamWriter(out, "UTF-8");
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            newLine(writer, 0);
+            writer.writeStartElement("archive");
+            
+            for (Map.Entry<String, String> entry : dirs.entrySet()) {
+                newLine(writer, 1);
+                addElement(writer, "dir", entry.getValue(), entry.getKey());
+            }
+            
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                newLine(writer, 1);
+                addElement(writer, "file", entry.getValue(), entry.getKey());
             }
+            
+            for (Map.Entry<String, String> entry : archives.entrySet()) {
+                newLine(writer, 1);
+                writer.writeStartElement("archive");
+                writer.writeAttribute("targetInArchive", entry.getValue());
+                newLine(writer, 2);
+                addElement(writer, "dir", "/", entry.getKey());
+                newLine(writer, 1);
+                writer.writeEndElement();
+            }
+            
+            newLine(writer, 0);
+            writer.writeEndElement();
+            newLine(writer, 0);
+            writer.writeEndDocument();
+        } finally {
+            writer.close();
         }
-        
-        writeXMLDocument(xmlFile);
+        return out.toByteArray();
     }
     
-    private void addElement(Element parent, Element child, String targetAttr, String srcAttr) {
-        child.setAttribute("sourceOnDisk", srcAttr);
-        addElement(parent, child, targetAttr);
+    private void addElement(XMLStreamWriter writer, String name, String targetAttr, String srcAttr) throws XMLStreamException {
+        writer.writeEmptyElement(name);
+        writer.writeAttribute("sourceOnDisk", srcAttr);
+        writer.writeAttribute("targetInArchive", targetAttr);
     }
     
-    private void addElement(Element parent, Element child, String targetAttr) {
-        child.setAttribute("targetInArchive", targetAttr);
-        parent.appendChild(child);
+    private void newLine(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters(INDENT);
+        }
     }
 }
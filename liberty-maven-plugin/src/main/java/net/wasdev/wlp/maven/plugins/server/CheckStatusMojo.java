@@ -17,7 +17,7 @@ package net.wasdev.wlp.maven.plugins.server;
 
 import java.text.MessageFormat;
 
-import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
 import org.apache.maven.plugins.annotations.Mojo;
 
 /**
@@ -39,8 +39,14 @@ public class CheckStatusMojo extends StartDebugMojoSupport {
 
         log.info(MessageFormat.format(messages.getString("info.server.status.check"), ""));
 
-        ServerTask serverTask = initializeJava();
-        serverTask.setOperation("status");
-        serverTask.execute();
+        // answer from the server lock when possible instead of launching the server script
+        ServerStatus status = getServerStatus();
+        if (status == ServerStatus.RUNNING) {
+            log.info(MessageFormat.format(messages.getString("info.server.status.running"), serverName));
+        } else if (status == ServerStatus.STOPPED) {
+            log.info(MessageFormat.format(messages.getString("info.server.status.stopped"), serverName));
+        } else {
+            log.warn(MessageFormat.format(messages.getString("warn.server.status.unknown"), serverName));
+        }
     }
 }
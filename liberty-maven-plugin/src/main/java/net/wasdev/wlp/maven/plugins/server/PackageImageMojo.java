@@ -0,0 +1,172 @@
+/**
+ * (C) Copyright IBM Corporation 2017.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.wasdev.wlp.maven.plugins.server;
+
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import net.wasdev.wlp.maven.plugins.InstallManifest;
+import net.wasdev.wlp.maven.plugins.OciImageWriter;
+import net.wasdev.wlp.maven.plugins.ServerLayout;
+
+/**
+ * Export a liberty server as a layered OCI image layout
+ */
+@Mojo(name = "package-image", defaultPhase = LifecyclePhase.PACKAGE)
+public class PackageImageMojo extends StartDebugMojoSupport {
+
+    /**
+     * Directory of the OCI image layout.
+     */
+    @Parameter(property = "imageDirectory", defaultValue = "${project.build.directory}/liberty-image")
+    private File imageDirectory;
+
+    /**
+     * Directory of the image that the server is installed in.
+     */
+    @Parameter(property = "imageInstallDirectory", defaultValue = "/opt/ibm/wlp")
+    private String imageInstallDirectory;
+
+    /**
+     * Reference name of the image in the layout.
+     */
+    @Parameter(property = "imageTag", defaultValue = "${project.version}")
+    private String imageTag;
+
+    /**
+     * OCI image layout that contains the base image, which provides the operating system and Java.
+     */
+    @Parameter(property = "baseImageDirectory")
+    private File baseImageDirectory;
+
+    /**
+     * Reference name of the base image in its layout. Needed if the layout contains several images.
+     */
+    @Parameter(property = "baseImageTag")
+    private String baseImageTag;
+
+    /**
+     * CPU architecture of the image.
+     */
+    @Parameter(property = "imageArchitecture", defaultValue = "amd64")
+    private String imageArchitecture;
+
+    /**
+     * Operating system of the image.
+     */
+    @Parameter(property = "imageOs", defaultValue = "linux")
+    private String imageOs;
+
+    /**
+     * Numeric id of the user that owns the server files and that the image runs as.
+     */
+    @Parameter(property = "imageUser", defaultValue = "1001")
+    private int imageUser = 1001;
+
+    /**
+     * Numeric id of the group that owns the server files.
+     */
+    @Parameter(property = "imageGroup", defaultValue = "0")
+    private int imageGroup;
+
+    @Override
+    protected void doExecute() throws Exception {
+        if (skip) {
+            return;
+        }
+        if (isInstall) {
+            installServerAssembly();
+        } else {
+            log.info(MessageFormat.format(messages.getString("info.install.type.preexisting"), ""));
+            checkServerHomeExists();
+            checkServerDirectoryExists();
+        }
+
+        log.info(MessageFormat.format(messages.getString("info.image.package"), serverName, imageDirectory.getCanonicalPath()));
+        copyConfigFiles();
+
+        ServerLayout layout = new ServerLayout(installDirectory, userDirectory, serverName, outputDirectory);
+        layout.exclude(imageDirectory);
+
+        // files of the installed assembly are the runtime, other files of the installation were added by features
+        InstallManifest manifest = null;
+        String installRoot = "";
+        File installMarker = new File(installDirectory, ".installed");
+        if (isInstall && installMarker.exists()) {
+            manifest = InstallManifest.read(installMarker);
+            installRoot = getInstallRootPath();
+            installRoot = installRoot.isEmpty() ? "" : installRoot + "/";
+        }
+
+        List<ServerLayout.Entry> runtime = new ArrayList<ServerLayout.Entry>();
+        List<ServerLayout.Entry> features = new ArrayList<ServerLayout.Entry>();
+        List<ServerLayout.Entry> dependencies = new ArrayList<ServerLayout.Entry>();
+        List<ServerLayout.Entry> application = new ArrayList<ServerLayout.Entry>();
+        String serverPath = "usr/servers/" + serverName + "/";
+        for (ServerLayout.Entry entry : layout.getEntries("all")) {
+            String name = entry.getName();
+            if (name.startsWith(serverPath)) {
+                application.add(entry);
+            } else if (name.startsWith("usr/shared/")) {
+                dependencies.add(entry);
+            } else if (name.startsWith("usr/extension/")) {
+                features.add(entry);
+            } else if (name.startsWith("usr/")) {
+                // parent directories are added to every layer that needs them
+                continue;
+            } else if (entry.isDirectory()) {
+                // install directories are added along with their files so that new feature directories do not change the runtime
+                continue;
+            } else if (manifest == null || manifest.contains(installRoot + name)) {
+                runtime.add(entry);
+            } else {
+                features.add(entry);
+            }
+        }
+        if (runtime.isEmpty()) {
+            // the manifest does not describe this installation
+            runtime.addAll(features);
+            features.clear();
+        }
+
+        OciImageWriter writer = new OciImageWriter(imageDirectory, imageInstallDirectory);
+        writer.addLayer("runtime", runtime);
+        writer.addLayer("features", features);
+        writer.addLayer("dependencies", dependencies);
+        // the server writes its logs and work area into the server directory
+        writer.addLayer("application", application, true);
+        writer.setOwner(imageUser, imageGroup);
+        List<String> command = null;
+        if (baseImageDirectory != null) {
+            writer.setBaseImage(baseImageDirectory, baseImageTag, imageArchitecture, imageOs);
+            String server = imageInstallDirectory.endsWith("/") ? imageInstallDirectory : imageInstallDirectory + "/";
+            command = Arrays.asList(server + "bin/server", "run", serverName);
+        } else {
+            // the server script needs a shell and Java, which only a base image provides
+            log.info(messages.getString("info.image.nobase"));
+        }
+        for (OciImageWriter.Layer layer : writer.write(imageTag, imageArchitecture, imageOs, command)) {
+            log.info(MessageFormat.format(messages.getString("info.image.layer"), layer.getName(), layer.getDigest(), layer.getSize()));
+        }
+    }
+}
@@ -16,14 +16,36 @@
 package net.wasdev.wlp.maven.plugins.server;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.ZipException;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
 
 import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.ArchiveExtractor;
+import net.wasdev.wlp.maven.plugins.AtomicFiles;
+import net.wasdev.wlp.maven.plugins.PackageIndex;
+import net.wasdev.wlp.maven.plugins.ParallelZipWriter;
+import net.wasdev.wlp.maven.plugins.ServerLayout;
+import net.wasdev.wlp.maven.plugins.ZipCentralDirectory;
 
 /**
  * Package a liberty server
@@ -31,6 +53,14 @@ import net.wasdev.wlp.ant.ServerTask;
 @Mojo(name = "package-server", defaultPhase = LifecyclePhase.PACKAGE) 
 public class PackageServerMojo extends StartDebugMojoSupport {
 
+    // 1980-01-01T00:00:00Z, the earliest time of a zip entry
+    private static final long DEFAULT_OUTPUT_TIME = 315532800000L;
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // marks a directory package, so that only directories created by the plugin are replaced
+    private static final String DIRECTORY_PACKAGE_MARKER = ".liberty-package";
+
     /**
      * Locate where server is packaged.
      */
@@ -60,6 +90,46 @@ public class PackageServerMojo extends StartDebugMojoSupport {
     @Parameter
     private boolean attach;
 
+    /**
+     * Package the server with the plug-in instead of the server package command, compressing
+     * the entries on all available processors. Supported for the "all", "usr" and "wlp" package types.
+     */
+    @Parameter(property = "useParallelPackaging", defaultValue = "false")
+    private boolean useParallelPackaging;
+
+    /**
+     * Compression level used by parallel packaging, from 0 (store only) to 9.
+     */
+    @Parameter(property = "compressionLevel", defaultValue = "6")
+    private int compressionLevel;
+
+    /**
+     * Copy the compressed data of files that did not change since the last package from it
+     * instead of compressing them again. Requires useParallelPackaging.
+     */
+    @Parameter(property = "incrementalPackage", defaultValue = "false")
+    private boolean incrementalPackage;
+
+    /**
+     * Create a reproducible package: entries are sorted and have the time of the
+     * outputTimestamp parameter and normalized permissions.
+     */
+    @Parameter(property = "reproduciblePackage", defaultValue = "false")
+    private boolean reproduciblePackage;
+
+    /**
+     * Time of the entries of a reproducible package, in ISO 8601 format or as seconds since the epoch.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+
+    /**
+     * Package format. One of "archive" or "directory". A directory package contains the
+     * files of the server as hard links or copies, as if the archive had been extracted.
+     */
+    @Parameter(property = "packageFormat", defaultValue = "archive")
+    private String packageFormat;
+
     @Override
     protected void doExecute() throws Exception {
         if (skip) {
@@ -77,30 +147,257 @@ public class PackageServerMojo extends StartDebugMojoSupport {
         ServerTask serverTask = initializeJava();
         copyConfigFiles();
         serverTask.setOperation("package");
-        String fileType = getPackageFileType(include);
         String projectBuildDir = project.getBuild().getDirectory();
         String projectBuildName = project.getBuild().getFinalName();
-        if (packageFile != null) {
-            if (packageFile.isDirectory()) {
-                packageFile = new File(packageFile, projectBuildName + fileType);
+        if ("directory".equals(packageFormat)) {
+            if (include != null && include.contains("runnable")) {
+                throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.package.directory.runnable"), include));
+            }
+            if (packageFile == null) {
+                packageFile = new File(projectBuildDir, projectBuildName);
+            } else if (packageFile.isDirectory() && !isDirectoryPackage(packageFile)) {
+                packageFile = new File(packageFile, projectBuildName);
+            }
+            log.info(MessageFormat.format(messages.getString("info.server.package.file.location"), packageFile.getCanonicalPath()));
+            packageDirectory(serverTask);
+        } else if ("archive".equals(packageFormat)) {
+            String fileType = getPackageFileType(include);
+            if (packageFile != null) {
+                if (packageFile.isDirectory()) {
+                    packageFile = new File(packageFile, projectBuildName + fileType);
+                }
+            } else {
+                packageFile = new File(projectBuildDir, projectBuildName + fileType);
+            }
+            log.info(MessageFormat.format(messages.getString("info.server.package.file.location"), packageFile.getCanonicalPath()));
+            long time = reproduciblePackage ? getOutputTime() : -1;
+            if (useParallelPackaging && ServerLayout.isSupported(include)) {
+                packageServer(time);
+            } else {
+                if (useParallelPackaging) {
+                    log.info(MessageFormat.format(messages.getString("info.server.package.parallel.unsupported"), include));
+                }
+                serverTask.setArchive(packageFile);
+                serverTask.setInclude(include);
+                serverTask.setOs(os);
+                serverTask.execute();
+                if (reproduciblePackage) {
+                    normalizePackage(time);
+                }
             }
         } else {
-            packageFile = new File(projectBuildDir, projectBuildName + fileType);
+            throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.package.format"), packageFormat));
         }
-        serverTask.setArchive(packageFile);
-        serverTask.setInclude(include);
-        serverTask.setOs(os);
-        log.info(MessageFormat.format(messages.getString("info.server.package.file.location"), packageFile.getCanonicalPath()));
-        serverTask.execute();
 
         if (attach || (project != null && "liberty-assembly".equals(project.getPackaging()))) {
             if (project == null) {
                 throw new MojoFailureException(MessageFormat.format(messages.getString("error.server.package.no.project"), ""));
             }
+            if ("directory".equals(packageFormat)) {
+                // other modules of the reactor can use a directory, install and deploy cannot
+                log.warn(MessageFormat.format(messages.getString("warn.server.package.directory.attach"), packageFile));
+            }
             project.getArtifact().setFile(packageFile);
         }
     }
     
+    private void packageDirectory(ServerTask serverTask) throws Exception {
+        File directory = packageFile.getCanonicalFile();
+        for (File source : new File[] { installDirectory, userDirectory }) {
+            if (source.getCanonicalFile().toPath().startsWith(directory.toPath())) {
+                throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.package.directory.overlap"),
+                        directory, source));
+            }
+        }
+        if (directory.exists()) {
+            String[] names = directory.list();
+            if (names == null || (names.length > 0 && !isDirectoryPackage(directory))) {
+                throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.package.directory.exists"),
+                        directory));
+            }
+            FileUtils.deleteDirectory(directory);
+        }
+        Files.createDirectories(directory.toPath());
+        Files.createFile(new File(directory, DIRECTORY_PACKAGE_MARKER).toPath());
+
+        if (!ServerLayout.isSupported(include)) {
+            // only the server package command can minify, extract the archive it creates
+            File archive = new File(project.getBuild().getDirectory(), directory.getName() + "-package.zip");
+            serverTask.setArchive(archive);
+            serverTask.setInclude(include);
+            serverTask.setOs(os);
+            serverTask.execute();
+            try {
+                new ArchiveExtractor().extract(archive, directory);
+            } finally {
+                archive.delete();
+            }
+            return;
+        }
+
+        ServerLayout layout = new ServerLayout(installDirectory, userDirectory, serverName, outputDirectory);
+        File root = new File(directory, ServerLayout.ROOT);
+        boolean link = true;
+        for (ServerLayout.Entry entry : layout.getEntries(include)) {
+            Path target = new File(root, entry.getName()).toPath();
+            if (entry.isDirectory()) {
+                Files.createDirectories(target);
+                continue;
+            }
+            Files.createDirectories(target.getParent());
+            if (link) {
+                try {
+                    Files.createLink(target, entry.getFile().toPath());
+                    continue;
+                } catch (IOException e) {
+                    // not on the same file system
+                    log.debug("Failed to link " + target + ": " + e.getMessage());
+                } catch (UnsupportedOperationException e) {
+                    log.debug("Failed to link " + target + ": " + e.getMessage());
+                }
+                link = false;
+            }
+            Files.copy(entry.getFile().toPath(), target, StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    private static boolean isDirectoryPackage(File directory) {
+        return new File(directory, DIRECTORY_PACKAGE_MARKER).isFile();
+    }
+
+    /**
+     * @param time the time of all entries, or -1 to use the times of the files
+     */
+    private void packageServer(long time) throws IOException {
+        ServerLayout layout = new ServerLayout(installDirectory, userDirectory, serverName, outputDirectory);
+        layout.exclude(packageFile);
+        List<ServerLayout.Entry> entries = layout.getEntries(include);
+        // the root directory is the only entry that is not in the layout
+        if (entries.size() + 1 > ParallelZipWriter.MAX_ENTRIES) {
+            throw new ZipException("The server has " + (entries.size() + 1) + " files and directories, but a package can hold at most "
+                    + ParallelZipWriter.MAX_ENTRIES);
+        }
+
+        File indexFile = new File(project.getBuild().getDirectory(), "liberty-package-" + packageFile.getName() + ".properties");
+        PackageIndex index = null;
+        if (incrementalPackage) {
+            index = PackageIndex.read(indexFile, packageFile, compressionLevel);
+        } else {
+            indexFile.delete();
+        }
+
+        packageFile.getParentFile().mkdirs();
+        Map<String, ServerLayout.Entry> files = new HashMap<String, ServerLayout.Entry>();
+        int reused = 0;
+        Path staged = AtomicFiles.getStagingFile(packageFile.toPath());
+        try {
+            ParallelZipWriter writer = new ParallelZipWriter(staged.toFile(), compressionLevel);
+            try {
+                boolean reproducible = time != -1;
+                if (reproducible) {
+                    writer.setTimeZone(UTC);
+                }
+                writer.addDirectory(ServerLayout.ROOT + "/", reproducible ? time : installDirectory.lastModified(), 0755);
+                for (ServerLayout.Entry entry : entries) {
+                    String name = ServerLayout.ROOT + "/" + entry.getName();
+                    long entryTime = reproducible ? time : entry.getLastModified();
+                    int mode = reproducible ? normalizeMode(entry.isDirectory(), entry.getUnixMode()) : entry.getUnixMode();
+                    if (entry.isDirectory()) {
+                        writer.addDirectory(name, entryTime, mode);
+                        continue;
+                    }
+                    files.put(name, entry);
+                    ZipCentralDirectory.Entry previous = index == null ? null : index.getEntry(name, entry);
+                    if (previous != null) {
+                        // the previous package is only replaced once the new one is complete
+                        writer.addCopy(name, packageFile, previous, entryTime, mode);
+                        reused++;
+                    } else {
+                        writer.addFile(name, entry.getFile(), entryTime, mode);
+                    }
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            AtomicFiles.commit(staged, packageFile.toPath());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+
+        if (incrementalPackage) {
+            log.info(MessageFormat.format(messages.getString("info.server.package.incremental"), reused, files.size() - reused));
+            PackageIndex.write(indexFile, packageFile, compressionLevel, files);
+        }
+    }
+
+    /**
+     * Rewrites the package created by the server package command in reproducible form. The
+     * compressed entry data is copied as it is.
+     */
+    private void normalizePackage(long time) throws IOException {
+        List<ZipCentralDirectory.Entry> entries = new ArrayList<ZipCentralDirectory.Entry>(ZipCentralDirectory.read(packageFile).getEntries());
+        Collections.sort(entries, new Comparator<ZipCentralDirectory.Entry>() {
+            @Override
+            public int compare(ZipCentralDirectory.Entry e1, ZipCentralDirectory.Entry e2) {
+                int rank = getRank(e1.getName()) - getRank(e2.getName());
+                return rank != 0 ? rank : e1.getName().compareTo(e2.getName());
+            }
+
+            // the manifest of a jar is expected to be its first or second entry
+            private int getRank(String name) {
+                if ("META-INF/".equals(name)) {
+                    return 0;
+                }
+                return "META-INF/MANIFEST.MF".equals(name) ? 1 : 2;
+            }
+        });
+
+        Path staged = AtomicFiles.getStagingFile(packageFile.toPath());
+        try {
+            ParallelZipWriter writer = new ParallelZipWriter(staged.toFile(), compressionLevel);
+            try {
+                writer.setTimeZone(UTC);
+                for (ZipCentralDirectory.Entry entry : entries) {
+                    int mode = normalizeMode(entry.isDirectory(), entry.getUnixMode());
+                    if (entry.isDirectory()) {
+                        writer.addDirectory(entry.getName(), time, mode);
+                    } else {
+                        writer.addCopy(entry.getName(), packageFile, entry, time, mode);
+                    }
+                }
+                writer.finish();
+            } finally {
+                writer.close();
+            }
+            AtomicFiles.commit(staged, packageFile.toPath());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    private long getOutputTime() throws MojoExecutionException {
+        if (outputTimestamp == null || outputTimestamp.isEmpty()) {
+            return DEFAULT_OUTPUT_TIME;
+        }
+        if (outputTimestamp.matches("\\d+")) {
+            return Long.parseLong(outputTimestamp) * 1000;
+        }
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").parse(outputTimestamp).getTime();
+        } catch (ParseException e) {
+            throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.package.timestamp"), outputTimestamp), e);
+        }
+    }
+
+    /**
+     * Returns 0755 for directories and executable files and 0644 for other files, so that the
+     * package does not depend on the umask of the build.
+     */
+    private static int normalizeMode(boolean directory, int mode) {
+        return directory || (mode != -1 && (mode & 0100) != 0) ? 0755 : 0644;
+    }
+
     private String getPackageFileType(String include) {
     	if(include != null && include.contains("runnable")) {
     		return ".jar";
@@ -59,6 +59,12 @@ public class PluginConfigSupport extends StartDebugMojoSupport {
      */
     @Parameter(property = "installAppPackages", defaultValue = "dependencies")
     protected String installAppPackages;
+
+    /**
+     * Hard link applications into the server instead of copying them when possible.
+     */
+    @Parameter(property = "linkApps", defaultValue = "false")
+    protected boolean linkApps;
     
     @Component
     private BuildContext buildContext;
@@ -209,7 +215,7 @@ public class PluginConfigSupport extends StartDebugMojoSupport {
         
         if (serverXML != null && serverXML.exists()) {
             try {
-                ServerConfigDocument scd = ServerConfigDocument.getInstance(serverXML, configDirectory);
+                ServerConfigDocument scd = getServerConfigDocument(serverXML, configDirectory);
                 
                 if (scd != null && scd.getLocations().contains(fileName)) {
                     log.debug("Application configuration is found in server.xml : " + fileName);
@@ -232,7 +238,7 @@ public class PluginConfigSupport extends StartDebugMojoSupport {
         
         if (serverXML != null && serverXML.exists()) {
             try {
-                ServerConfigDocument scd = ServerConfigDocument.getInstance(serverXML, configDirectory);
+                ServerConfigDocument scd = getServerConfigDocument(serverXML, configDirectory);
                 
                 if (scd != null && scd.getLocations().size() > 0) {
                     log.debug("Application configuration is found in server.xml.");
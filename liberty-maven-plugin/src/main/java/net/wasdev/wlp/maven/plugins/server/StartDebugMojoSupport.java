@@ -15,19 +15,25 @@
  */
 package net.wasdev.wlp.maven.plugins.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import net.wasdev.wlp.ant.ServerTask;
 import net.wasdev.wlp.maven.plugins.BasicSupport;
+import net.wasdev.wlp.maven.plugins.ConfigSync;
+import net.wasdev.wlp.maven.plugins.ServerConfigDocument;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
 
-import org.apache.tools.ant.taskdefs.Copy;
-import org.apache.tools.ant.types.FileSet;
 import org.apache.maven.plugins.annotations.Parameter;
 
 /**
@@ -73,6 +79,34 @@ public class StartDebugMojoSupport extends BasicSupport {
     @Parameter(property = "serverEnv", defaultValue = "${basedir}/src/test/resources/server.env")
     protected File serverEnv;
 
+    /**
+     * Remove configuration files copied to the server by a previous run that
+     * are no longer part of the configuration.
+     */
+    @Parameter(property = "removeStaleConfigFiles", defaultValue = "false")
+    protected boolean removeStaleConfigFiles = false;
+
+    // documents whose unreadable includes were logged by this execution
+    private final Set<ServerConfigDocument> checkedDocuments = Collections
+            .newSetFromMap(new IdentityHashMap<ServerConfigDocument, Boolean>());
+
+    /**
+     * Returns the server configuration of a server.xml, logging the includes
+     * that could not be read once per document.
+     */
+    protected ServerConfigDocument getServerConfigDocument(File serverXML, File configDir) throws Exception {
+        ServerConfigDocument document = ServerConfigDocument.getInstance(serverXML, configDir);
+        synchronized (checkedDocuments) {
+            if (checkedDocuments.add(document)) {
+                for (Map.Entry<String, String> include : document.getUnreadableIncludes().entrySet()) {
+                    log.warn(MessageFormat.format(messages.getString("warn.server.config.include"),
+                            include.getKey(), include.getValue()));
+                }
+            }
+        }
+        return document;
+    }
+
     protected ServerTask initializeJava() throws Exception {
         ServerTask serverTask = (ServerTask) ant.createTask("antlib:net/wasdev/wlp/ant:server");
         if (serverTask == null) {
@@ -85,6 +119,33 @@ public class StartDebugMojoSupport extends BasicSupport {
         return serverTask;
     }
 
+    /**
+     * Returns the status of the server. The server script is only launched if
+     * the status cannot be told from the server lock.
+     */
+    protected ServerStatus getServerStatus() throws Exception {
+        ServerStatus status = ServerStatus.check(new File(outputDirectory, serverName));
+        if (status != ServerStatus.UNKNOWN) {
+            return status;
+        }
+        ServerTask serverTask = initializeJava();
+        serverTask.setOperation("status");
+        try {
+            serverTask.execute();
+        } catch (Exception e) {
+            log.debug("Error checking the server status", e);
+            return ServerStatus.UNKNOWN;
+        }
+        String returnCode = serverTask.getProject().getUserProperty(serverTask.getResultProperty());
+        if ("0".equals(returnCode)) {
+            return ServerStatus.RUNNING;
+        } else if ("1".equals(returnCode) || "2".equals(returnCode)) {
+            // the server is not running, or does not exist
+            return ServerStatus.STOPPED;
+        }
+        return ServerStatus.UNKNOWN;
+    }
+
     /**
      * @throws IOException
      * @throws FileNotFoundException
@@ -96,15 +157,12 @@ public class StartDebugMojoSupport extends BasicSupport {
         String bootStrapPropertiesPath = null;
         String serverEnvPath = null;
         
+        // only files that differ from the server directory are written
+        ConfigSync sync = new ConfigSync(serverDirectory);
+        
         if (configDirectory != null && configDirectory.exists()) {
             // copy configuration files from configuration directory to server directory if end-user set it
-            Copy copydir = (Copy) ant.createTask("copy");
-            FileSet fileset = new FileSet();
-            fileset.setDir(configDirectory);
-            copydir.addFileset(fileset);
-            copydir.setTodir(serverDirectory);
-            copydir.setOverwrite(true);
-            copydir.execute();
+            sync.copyDirectory(configDirectory);
 
             File configDirServerXML = new File(configDirectory, "server.xml");
             if (configDirServerXML.exists()) {
@@ -131,43 +189,29 @@ public class StartDebugMojoSupport extends BasicSupport {
         if (serverXMLPath == null || serverXMLPath.isEmpty()) {
             // copy configuration file to server directory if end-user set it.
             if (configFile != null && configFile.exists()) {
-                Copy copy = (Copy) ant.createTask("copy");
-                copy.setFile(configFile);
-                copy.setTofile(new File(serverDirectory, "server.xml"));
-                copy.setOverwrite(true);
-                copy.execute();
+                sync.copyFile(configFile, "server.xml");
                 serverXMLPath = configFile.getCanonicalPath();
             }
         }
         
         // handle jvm.options if not overwritten by jvm.options from configDirectory
         if (jvmOptionsPath == null || jvmOptionsPath.isEmpty()) {
-            File optionsFile = new File(serverDirectory, "jvm.options");
             if (jvmOptions != null) {
-                writeJvmOptions(optionsFile, jvmOptions);
+                sync.writeFile(generateJvmOptions(jvmOptions), "jvm.options");
                 jvmOptionsPath = "inlined configuration";
             } else if (jvmOptionsFile != null && jvmOptionsFile.exists()) {
-                Copy copy = (Copy) ant.createTask("copy");
-                copy.setFile(jvmOptionsFile);
-                copy.setTofile(optionsFile);
-                copy.setOverwrite(true);
-                copy.execute();
+                sync.copyFile(jvmOptionsFile, "jvm.options");
                 jvmOptionsPath = jvmOptionsFile.getCanonicalPath();
             }
         }
         
         // handle bootstrap.properties if not overwritten by bootstrap.properties from configDirectory
         if (bootStrapPropertiesPath == null || bootStrapPropertiesPath.isEmpty()) {
-            File bootstrapFile = new File(serverDirectory, "bootstrap.properties");
             if (bootstrapProperties != null) {
-                writeBootstrapProperties(bootstrapFile, bootstrapProperties);
+                sync.writeFile(generateBootstrapProperties(bootstrapProperties), "bootstrap.properties");
                 bootStrapPropertiesPath = "inlined configuration";
             } else if (bootstrapPropertiesFile != null && bootstrapPropertiesFile.exists()) {
-                Copy copy = (Copy) ant.createTask("copy");
-                copy.setFile(bootstrapPropertiesFile);
-                copy.setTofile(bootstrapFile);
-                copy.setOverwrite(true);
-                copy.execute();
+                sync.copyFile(bootstrapPropertiesFile, "bootstrap.properties");
                 bootStrapPropertiesPath = bootstrapPropertiesFile.getCanonicalPath();
             }
         }
@@ -175,11 +219,7 @@ public class StartDebugMojoSupport extends BasicSupport {
         // handle server.env if not overwritten by server.env from configDirectory
         if (serverEnvPath == null || serverEnvPath.isEmpty()) {
             if (serverEnv != null && serverEnv.exists()) {
-                Copy copy = (Copy) ant.createTask("copy");
-                copy.setFile(serverEnv);
-                copy.setTofile(new File(serverDirectory, "server.env"));
-                copy.setOverwrite(true);
-                copy.execute();
+                sync.copyFile(serverEnv, "server.env");
                 serverEnvPath = serverEnv.getCanonicalPath();
             }
         }
@@ -201,13 +241,23 @@ public class StartDebugMojoSupport extends BasicSupport {
             log.info(MessageFormat.format(messages.getString("info.server.start.update.config"), 
                 "server.env", serverEnvPath));
         }
+        
+        sync.finish(new File(project.getBuild().getDirectory(), "liberty-config-" + serverName + ".txt"),
+                removeStaleConfigFiles);
+        for (String path : sync.getUpdated()) {
+            log.debug("Updated server configuration file " + path);
+        }
+        for (String path : sync.getRemoved()) {
+            log.debug("Removed stale server configuration file " + path);
+        }
+        log.info(MessageFormat.format(messages.getString("info.server.config.sync"), 
+            sync.getUpdated().size(), sync.getUnchanged(), sync.getRemoved().size()));
     }
     
-    private void writeBootstrapProperties(File file, Map<String, String> properties) throws IOException {
-        makeParentDirectory(file);
-        PrintWriter writer = null;
+    private byte[] generateBootstrapProperties(Map<String, String> properties) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
         try {
-            writer = new PrintWriter(file, "UTF-8"); 
             writer.println(HEADER);
             for (Map.Entry<String, String> entry : properties.entrySet()) {
                 writer.print(entry.getKey());
@@ -215,33 +265,23 @@ public class StartDebugMojoSupport extends BasicSupport {
                 writer.println((entry.getValue() != null) ? entry.getValue().replace("\\", "/") : "");
             }
         } finally {
-            if (writer != null) {
-                writer.close(); 
-            }
+            writer.close();
         }
+        return out.toByteArray();
     }
     
-    private void writeJvmOptions(File file, List<String> options) throws IOException {
-        makeParentDirectory(file);
-        PrintWriter writer = null;
+    private byte[] generateJvmOptions(List<String> options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
         try {
-            writer = new PrintWriter(file, "UTF-8"); 
             writer.println(HEADER);
             for (String option : options) {
                 writer.println(option);
             }
         } finally {
-            if (writer != null) {
-                writer.close(); 
-            }
-        }
-    }
-    
-    private void makeParentDirectory(File file) {        
-        File parentDir = file.getParentFile();
-        if (parentDir != null) {
-            parentDir.mkdirs();
+            writer.close();
         }
+        return out.toByteArray();
     }
 
 }
@@ -15,13 +15,20 @@
  */
 package net.wasdev.wlp.maven.plugins.server;
 
+import java.io.File;
+import java.net.URL;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
 import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.HttpProbe;
+import net.wasdev.wlp.maven.plugins.LogTailer;
 
 /**
  * Start a liberty server
@@ -48,6 +55,18 @@ public class StartServerMojo extends StartDebugMojoSupport {
     @Parameter(property = "applications")
     private String applications;
 
+    /**
+     * comma separated list of URLs that must respond successfully before the server is considered started
+     */
+    @Parameter(property = "probeUrls")
+    private String probeUrls;
+
+    /**
+     * Wait until the HTTP endpoint configured in server.xml accepts requests.
+     */
+    @Parameter(property = "probeServerEndpoint", defaultValue = "false")
+    private boolean probeServerEndpoint = false;
+
     /**
      * Clean all cached information on server start up.
      */
@@ -77,22 +96,68 @@ public class StartServerMojo extends StartDebugMojoSupport {
         serverTask.setTimeout(Long.toString(serverStartTimeout * 1000));
         serverTask.execute();
 
+        verifyServerStarted(serverTask, 0);
+    }
+
+    /**
+     * Waits for the applications to start and the probed endpoints to respond.
+     * 
+     * @param logOffset length of the server log to skip when looking for application start messages
+     */
+    protected void verifyServerStarted(ServerTask serverTask, long logOffset) throws Exception {
         if (verifyTimeout < 0) {
             verifyTimeout = 30;
         }
         long timeout = verifyTimeout * 1000;
         long endTime = System.currentTimeMillis() + timeout;
         if (applications != null) {
-            String[] apps = applications.split("[,\\s]+");
-            for (String archiveName : apps) {
-                String startMessage = serverTask.waitForStringInLog(START_APP_MESSAGE_REGEXP + archiveName, timeout, serverTask.getLogFile());
-                if (startMessage == null) {
-                    stopServer();
-                    throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.start.verify"), verifyTimeout));
+            // follow the log once for all applications
+            List<Pattern> patterns = new ArrayList<Pattern>();
+            for (String archiveName : applications.split("[,\\s]+")) {
+                patterns.add(Pattern.compile(START_APP_MESSAGE_REGEXP + archiveName));
+            }
+            LogTailer tailer = new LogTailer(serverTask.getLogFile(), START_APP_MESSAGE_CODE);
+            tailer.seek(logOffset);
+            List<Pattern> notStarted = tailer.waitFor(patterns, timeout);
+            if (!notStarted.isEmpty()) {
+                log.debug("Applications not started: " + notStarted);
+                stopServer();
+                throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.start.verify"), verifyTimeout));
+            }
+        }
+
+        List<HttpProbe.Endpoint> endpoints = getProbeEndpoints();
+        if (!endpoints.isEmpty()) {
+            List<HttpProbe.Endpoint> notReady = HttpProbe.waitFor(endpoints, endTime - System.currentTimeMillis());
+            if (!notReady.isEmpty()) {
+                stopServer();
+                throw new MojoExecutionException(MessageFormat.format(messages.getString("error.server.start.probe"), 
+                        notReady.toString(), verifyTimeout));
+            }
+        }
+    }
+
+    private List<HttpProbe.Endpoint> getProbeEndpoints() throws Exception {
+        List<HttpProbe.Endpoint> endpoints = new ArrayList<HttpProbe.Endpoint>();
+        if (probeServerEndpoint) {
+            // the configuration directory was copied to the server directory
+            URL url = HttpProbe.getServerEndpoint(new File(serverDirectory, "server.xml"), null);
+            if (url != null) {
+                // any response means the endpoint is listening
+                endpoints.add(new HttpProbe.Endpoint(url, true));
+            } else {
+                // the server start command already waited for the server started message
+                log.debug("No HTTP endpoint with a resolvable port was found in the server configuration");
+            }
+        }
+        if (probeUrls != null) {
+            for (String probeUrl : probeUrls.split("[,\\s]+")) {
+                if (!probeUrl.isEmpty()) {
+                    endpoints.add(new HttpProbe.Endpoint(new URL(probeUrl), false));
                 }
-                timeout = endTime - System.currentTimeMillis();
             }
         }
+        return endpoints;
     }
 
     private void stopServer() {
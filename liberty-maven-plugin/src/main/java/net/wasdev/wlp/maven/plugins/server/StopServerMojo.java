@@ -15,9 +15,12 @@
  */
 package net.wasdev.wlp.maven.plugins.server;
 
+import java.io.File;
 import java.text.MessageFormat;
 
 import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.ServerPool;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
@@ -40,8 +43,14 @@ public class StopServerMojo extends StartDebugMojoSupport {
         }
         
         log.info(MessageFormat.format(messages.getString("info.server.stopping"), serverName));
+        ServerPool.remove(installDirectory, userDirectory, serverName);
         
-        if (serverDirectory.exists()) {
+        // only the server lock is checked, the stop script already handles a stopped server
+        if (serverDirectory.exists() && ServerStatus.check(new File(outputDirectory, serverName)) == ServerStatus.STOPPED) {
+            // nothing to stop, skip launching the server script
+            log.info(MessageFormat.format(messages.getString("info.server.status.stopped"), serverName));
+        }
+        else if (serverDirectory.exists()) {
             try {
                 ServerTask serverTask = initializeJava();
                 serverTask.setTimeout(Long.toString(serverStopTimeout * 1000));
@@ -15,9 +15,18 @@
  */
 package net.wasdev.wlp.maven.plugins.server;
 
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Set;
+
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 
+import net.wasdev.wlp.ant.ServerTask;
+import net.wasdev.wlp.maven.plugins.ServerPool;
+import net.wasdev.wlp.maven.plugins.ServerStatus;
+
 /**
  * Start a liberty server if tests are not skipped
  */
@@ -28,6 +37,20 @@ public class TestStartServerMojo extends StartServerMojo {
     @Parameter(property = "skipTestServer", defaultValue = "false")
     private boolean skipTestServer;
 
+    /**
+     * Keep the server running for later modules of the build instead of
+     * starting it again, as long as its install directory, user directory,
+     * name and features do not change.
+     */
+    @Parameter(property = "useServerPool", defaultValue = "false")
+    private boolean useServerPool;
+
+    /**
+     * The Maven session, whose end stops the pooled servers.
+     */
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private Object session;
+
     @Override
     protected void doExecute() throws Exception {
         
@@ -40,6 +63,46 @@ public class TestStartServerMojo extends StartServerMojo {
                 || skipTestServer){
             return;
         }
+        boolean pool = useServerPool && !skip;
+        if (pool && !ServerPool.stopOnSessionEnd(session)) {
+            log.warn(messages.getString("warn.server.pool.unsupported"));
+            pool = false;
+        }
+        Set<String> features = null;
+        if (pool) {
+            copyConfigFiles();
+            features = getFeatures();
+            ServerPool.Server pooled = ServerPool.acquire(installDirectory, userDirectory, serverName, features);
+            if (pooled != null && getServerStatus() == ServerStatus.STOPPED) {
+                // the pooled server was stopped outside of the plugin
+                ServerPool.remove(installDirectory, userDirectory, serverName);
+                pooled = null;
+            }
+            if (pooled != null) {
+                log.info(MessageFormat.format(messages.getString("info.server.pool.reuse"), serverName));
+                verifyServerStarted(initializeJava(), pooled.getLogOffset());
+                return;
+            }
+        }
+        if (!skip) {
+            // idle pooled servers hold on to their ports
+            for (String name : ServerPool.stopIdle()) {
+                log.info(MessageFormat.format(messages.getString("info.server.pool.stop"), name));
+            }
+        }
         super.doExecute();
+        if (pool) {
+            ServerTask stopTask = initializeJava();
+            stopTask.setOperation("stop");
+            ServerPool.add(installDirectory, userDirectory, serverName, features, stopTask);
+        }
+    }
+
+    private Set<String> getFeatures() throws Exception {
+        File serverXML = new File(serverDirectory, "server.xml");
+        if (!serverXML.isFile()) {
+            return Collections.emptySet();
+        }
+        return getServerConfigDocument(serverXML, null).getFeatures();
     }
 }
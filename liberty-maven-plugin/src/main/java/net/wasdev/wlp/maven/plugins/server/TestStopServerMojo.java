@@ -15,8 +15,14 @@
  */
 package net.wasdev.wlp.maven.plugins.server;
 
+import java.io.File;
+import java.text.MessageFormat;
+
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.codehaus.plexus.util.FileUtils;
+
+import net.wasdev.wlp.maven.plugins.ServerPool;
 
 /**
  * Quickly bypass stopping server if server isn't started
@@ -28,6 +34,14 @@ public class TestStopServerMojo extends StopServerMojo {
     @Parameter(property = "skipTestServer", defaultValue = "false")
     private boolean skipTestServer;
 
+    /**
+     * Keep a server started with <code>useServerPool</code> running for later
+     * modules of the build. The applications in its dropins directory are
+     * removed instead of stopping the server.
+     */
+    @Parameter(property = "useServerPool", defaultValue = "false")
+    private boolean useServerPool;
+
     @Override
     protected void doExecute() throws Exception {
         
@@ -40,6 +54,25 @@ public class TestStopServerMojo extends StopServerMojo {
                 || skipTestServer){
             return;
         }
+        if (useServerPool && !skip) {
+            ServerPool.Server pooled = ServerPool.find(installDirectory, userDirectory, serverName);
+            if (pooled != null) {
+                resetServer(pooled);
+                ServerPool.release(pooled);
+                return;
+            }
+        }
         super.doExecute();
     }
+
+    private void resetServer(ServerPool.Server pooled) throws Exception {
+        File dropins = new File(serverDirectory, "dropins");
+        if (dropins.isDirectory()) {
+            FileUtils.cleanDirectory(dropins);
+        }
+        // application start messages before this point belong to this module
+        File logFile = initializeJava().getLogFile();
+        pooled.setLogOffset(logFile.length());
+        log.info(MessageFormat.format(messages.getString("info.server.pool.reset"), serverName));
+    }
 }